@@ -0,0 +1,174 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.taskqueue.QueueFactory;
+import com.google.appengine.api.taskqueue.TaskOptions;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A background job that works through the results of a query one batch at a time. The job is
+ * stored as an entity of its own kind and processed by task queue tasks, each of which reads the
+ * next batch from the job's cursor, hands it to {@link #processBatch}, records the progress on the
+ * job and queues the task for the next batch. Subclasses supply the query and the per-batch step.
+ *
+ * <p>Every job counts the entities it has scanned. Subclasses can keep more counters, named in the
+ * constructor, and add to them with {@link #addToCounter}.
+ */
+public abstract class BatchJob {
+
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+  private final String kind;
+  private final String workerUrl;
+  private final int batchSize;
+  private final List<String> counters;
+
+  /**
+   * Constructs a BatchJob.
+   *
+   * @param kind Datastore kind of the job entities
+   * @param workerUrl URL of the task queue handler that calls {@link #runBatch}
+   * @param batchSize number of query results read per task
+   * @param counters names of the progress counters besides "scanned"
+   */
+  protected BatchJob(String kind, String workerUrl, int batchSize, String... counters) {
+    this.kind = kind;
+    this.workerUrl = workerUrl;
+    this.batchSize = batchSize;
+    this.counters = Arrays.asList(counters);
+  }
+
+  /** Returns the query whose results the job works through. */
+  protected abstract Query buildQuery(Entity job);
+
+  /**
+   * Processes one batch of query results. May update the job's counters and properties, which are
+   * saved together with its progress.
+   */
+  protected abstract void processBatch(Entity job, List<Entity> batch);
+
+  /** Called after the last batch, before the job is saved as done. Does nothing by default. */
+  protected void finish(Entity job) {}
+
+  /**
+   * Starts a job and returns its key.
+   *
+   * @param parameters properties stored on the job for {@link #buildQuery} and
+   *     {@link #processBatch} to read
+   */
+  protected Key start(Map<String, Object> parameters) {
+    Entity job = new Entity(kind);
+    for (Map.Entry<String, Object> parameter : parameters.entrySet()) {
+      job.setProperty(parameter.getKey(), parameter.getValue());
+    }
+    job.setProperty("status", "running");
+    job.setProperty("scanned", 0L);
+    for (String counter : counters) {
+      job.setProperty(counter, 0L);
+    }
+    job.setProperty("created", new Date());
+    Key jobKey = datastore.put(job);
+    enqueueBatch(jobKey);
+    return jobKey;
+  }
+
+  /**
+   * Processes the next batch of the job, and queues the batch after it if the job is not finished
+   * yet. Jobs that are done or failed are left alone.
+   */
+  public void runBatch(Key jobKey) throws EntityNotFoundException {
+    Entity job = datastore.get(jobKey);
+    if (!"running".equals(job.getProperty("status"))) {
+      return;
+    }
+
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(batchSize);
+    String cursor = (String) job.getProperty("cursor");
+    if (cursor != null) {
+      fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+    }
+    QueryResultList<Entity> batch =
+        datastore.prepare(buildQuery(job)).asQueryResultList(fetchOptions);
+
+    processBatch(job, batch);
+
+    addToCounter(job, "scanned", batch.size());
+    job.setUnindexedProperty("cursor", batch.getCursor().toWebSafeString());
+    boolean finished = batch.size() < batchSize;
+    if (finished) {
+      finish(job);
+    }
+    job.setProperty("status", finished ? "done" : "running");
+    datastore.put(job);
+    if (!finished) {
+      enqueueBatch(jobKey);
+    }
+  }
+
+  /**
+   * Marks a job as failed so that it is not run again. Call when a batch fails in a way that
+   * retrying cannot fix.
+   */
+  public void fail(Key jobKey, String error) throws EntityNotFoundException {
+    Entity job = datastore.get(jobKey);
+    job.setProperty("status", "failed");
+    job.setUnindexedProperty("error", error);
+    datastore.put(job);
+  }
+
+  /** Returns the status of a job, its counters, and why it failed if it did. */
+  public Map<String, Object> getProgress(Key jobKey) throws EntityNotFoundException {
+    Entity job = datastore.get(jobKey);
+    if (!job.getKind().equals(kind)) {
+      throw new EntityNotFoundException(jobKey);
+    }
+    Map<String, Object> progress = new LinkedHashMap<>();
+    progress.put("job", KeyFactory.keyToString(jobKey));
+    progress.put("status", job.getProperty("status"));
+    progress.put("scanned", job.getProperty("scanned"));
+    for (String counter : counters) {
+      progress.put(counter, job.getProperty(counter));
+    }
+    if (job.hasProperty("error")) {
+      progress.put("error", job.getProperty("error"));
+    }
+    return progress;
+  }
+
+  /** Adds {@code amount} to one of the job's counters. */
+  protected static void addToCounter(Entity job, String counter, long amount) {
+    job.setProperty(counter, (long) job.getProperty(counter) + amount);
+  }
+
+  private void enqueueBatch(Key jobKey) {
+    QueueFactory.getDefaultQueue()
+        .add(TaskOptions.Builder.withUrl(workerUrl).param("job", KeyFactory.keyToString(jobKey)));
+  }
+}
@@ -1,35 +1,63 @@
 package com.google.sps.data;
 
+import java.io.Serializable;
 import java.util.Date;
-import java.util.Set;
 
 /** Class containing information about a comment left on the site. */
-public class Comment {
+public class Comment implements LikeableComment<Comment>, Serializable {
+
+  private static final long serialVersionUID = 1L;
 
   private final String email;
   private final String name;
   private final String content;
+  private final String authorHtml;
+  private final String contentHtml;
   private int numLikes;
-  private final Set<String> userLikes;
+  private final boolean likedByUser;
   private final Date timestamp;
   private final String key;
 
   /**
    * Constructs a Comment.
    *
+   * @param email email of person who posted comment
    * @param name name of person who posted comment
    * @param content message left in the comment
+   * @param authorHtml name shown as the comment's author, as safe HTML
+   * @param contentHtml message left in the comment, as safe HTML
    * @param numLikes current number of likes the comment has
+   * @param likedByUser whether the user viewing the comment has liked it
    * @param timestamp time that comment was posted
    * @param key unique identifier for the comment
    */
-  public Comment(String email, String name, String content, int numLikes, Set<String> userLikes, Date timestamp, String key) {
+  public Comment(String email, String name, String content, String authorHtml, String contentHtml,
+      int numLikes, boolean likedByUser, Date timestamp, String key) {
     this.email = email;
     this.name = name;
     this.content = content;
+    this.authorHtml = authorHtml;
+    this.contentHtml = contentHtml;
     this.numLikes = numLikes;
-    this.userLikes = userLikes;
+    this.likedByUser = likedByUser;
     this.timestamp = timestamp;
     this.key = key;
   }
+
+  @Override
+  public String getKey() {
+    return key;
+  }
+
+  @Override
+  public Comment withLikedByUser(boolean likedByUser) {
+    return new Comment(
+        email, name, content, authorHtml, contentHtml, numLikes, likedByUser, timestamp, key);
+  }
+
+  @Override
+  public Comment withAddedLikes(long numLikes) {
+    return new Comment(email, name, content, authorHtml, contentHtml,
+        (int) (this.numLikes + numLikes), likedByUser, timestamp, key);
+  }
 }
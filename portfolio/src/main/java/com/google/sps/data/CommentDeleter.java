@@ -0,0 +1,79 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Deletes comments together with the likes and like counters that belong to them. */
+public final class CommentDeleter {
+
+  // Datastore accepts at most 500 keys per batch delete, and at most 30 values in an IN filter.
+  private static final int MAX_BATCH_SIZE = 500;
+  private static final int MAX_IN_FILTER_SIZE = 30;
+
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+
+  private CommentDeleter() {
+    // Disallow instances.
+  }
+
+  /**
+   * Deletes the comments, their Like entities and their like counter shards in batch deletes,
+   * after dropping any of their writes still waiting in this instance's write-behind buffer. Also
+   * removes the comments from the search index and the like leaderboard, invalidates the comment
+   * feed cache and publishes a deleted event for each comment.
+   */
+  public static void deleteComments(List<Key> commentKeys) {
+    if (commentKeys.isEmpty()) {
+      return;
+    }
+    // Otherwise a later flush would write the comments or their likes back.
+    WriteBehindQueue.getInstance().discardForComments(commentKeys);
+
+    List<Key> keysToDelete = new ArrayList<>(commentKeys);
+    for (int start = 0; start < commentKeys.size(); start += MAX_IN_FILTER_SIZE) {
+      List<Key> commentKeysChunk =
+          commentKeys.subList(start, Math.min(start + MAX_IN_FILTER_SIZE, commentKeys.size()));
+      Query likesQuery = new Query(Likes.KIND)
+          .setFilter(new FilterPredicate("commentKey", FilterOperator.IN, commentKeysChunk))
+          .setKeysOnly();
+      for (Entity like : datastore.prepare(likesQuery).asIterable()) {
+        keysToDelete.add(like.getKey());
+      }
+    }
+    for (Key commentKey : commentKeys) {
+      keysToDelete.addAll(Likes.getCounter(commentKey).getShardKeys());
+    }
+
+    for (int start = 0; start < keysToDelete.size(); start += MAX_BATCH_SIZE) {
+      datastore.delete(
+          keysToDelete.subList(start, Math.min(start + MAX_BATCH_SIZE, keysToDelete.size())));
+    }
+    CommentSearchIndex.removeAll(commentKeys);
+    LikeLeaderboard.getInstance().removeAll(commentKeys);
+    CommentFeedCache.getInstance().invalidate();
+    for (Key commentKey : commentKeys) {
+      CommentEventBus.getInstance().publish(CommentEvent.DELETED, commentKey);
+    }
+  }
+}
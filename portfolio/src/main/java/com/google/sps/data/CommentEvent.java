@@ -0,0 +1,49 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/** A change to a comment, as pushed to clients listening for comment events. */
+public class CommentEvent {
+
+  /** Types of change. */
+  public static final String CREATED = "created";
+  public static final String LIKED = "liked";
+  public static final String DELETED = "deleted";
+
+  private final long id;
+  private final String type;
+  private final String commentKey;
+  private final Long likeDelta;
+
+  /**
+   * Constructs a CommentEvent.
+   *
+   * @param id position of the event in the stream of events of this instance
+   * @param type one of CREATED, LIKED or DELETED
+   * @param commentKey key of the comment that changed
+   * @param likeDelta for LIKED events, 1 if the comment gained a like and -1 if it lost one, so
+   *     that clients can update the shown total without reading it again; otherwise null
+   */
+  public CommentEvent(long id, String type, String commentKey, Long likeDelta) {
+    this.id = id;
+    this.type = type;
+    this.commentKey = commentKey;
+    this.likeDelta = likeDelta;
+  }
+
+  public long getId() {
+    return id;
+  }
+}
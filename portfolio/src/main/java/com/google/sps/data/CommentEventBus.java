@@ -0,0 +1,120 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus of comment events. Servlets that change comments publish events, and listeners
+ * waiting for the next event are called with it. Recent events are kept so that a client that
+ * reconnects can catch up on what it missed.
+ *
+ * <p>Events are numbered in order within one instance, and each instance has its own stream ID,
+ * so that a client can tell whether the numbers it has seen belong to this instance.
+ *
+ * <p>The bus is not shared between instances. A client only hears about changes made through the
+ * instance that serves its event requests, and changes made through other instances show up the
+ * next time it loads comments.
+ */
+public class CommentEventBus {
+
+  private static final int MAX_RECENT_EVENTS = 1000;
+  private static final CommentEventBus INSTANCE = new CommentEventBus();
+
+  private final String streamId = UUID.randomUUID().toString();
+
+  // Guarded by the lock on this object.
+  private final Deque<CommentEvent> recentEvents = new ArrayDeque<>();
+  private final Set<Consumer<List<CommentEvent>>> listeners = new LinkedHashSet<>();
+  private long lastId;
+
+  private CommentEventBus() {}
+
+  public static CommentEventBus getInstance() {
+    return INSTANCE;
+  }
+
+  public String getStreamId() {
+    return streamId;
+  }
+
+  public synchronized long getLastId() {
+    return lastId;
+  }
+
+  /** Publishes an event and passes it to every waiting listener. */
+  public void publish(String type, Key commentKey) {
+    publish(type, commentKey, null);
+  }
+
+  /**
+   * Publishes a LIKED event for a comment that gained ({@code delta} = 1) or lost
+   * ({@code delta} = -1) a like.
+   */
+  public void publishLikeChange(Key commentKey, long delta) {
+    publish(CommentEvent.LIKED, commentKey, delta);
+  }
+
+  private void publish(String type, Key commentKey, Long likeDelta) {
+    CommentEvent event;
+    List<Consumer<List<CommentEvent>>> waiting;
+    synchronized (this) {
+      event = new CommentEvent(++lastId, type, KeyFactory.keyToString(commentKey), likeDelta);
+      recentEvents.addLast(event);
+      if (recentEvents.size() > MAX_RECENT_EVENTS) {
+        recentEvents.removeFirst();
+      }
+      waiting = new ArrayList<>(listeners);
+      listeners.clear();
+    }
+    // Listeners are only registered when they have seen every earlier event.
+    for (Consumer<List<CommentEvent>> listener : waiting) {
+      listener.accept(Collections.singletonList(event));
+    }
+  }
+
+  /**
+   * Returns the recent events that come after {@code afterId}. If there are none, registers the
+   * listener to be called once with the next event instead, and returns an empty list.
+   */
+  public synchronized List<CommentEvent> subscribe(
+      long afterId, Consumer<List<CommentEvent>> listener) {
+    List<CommentEvent> events = new ArrayList<>();
+    for (CommentEvent event : recentEvents) {
+      if (event.getId() > afterId) {
+        events.add(event);
+      }
+    }
+    if (events.isEmpty()) {
+      listeners.add(listener);
+    }
+    return events;
+  }
+
+  /** Removes a listener that is no longer waiting, for example because its request timed out. */
+  public synchronized void unsubscribe(Consumer<List<CommentEvent>> listener) {
+    listeners.remove(listener);
+  }
+}
@@ -0,0 +1,244 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceException;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * In-process cache of comment feed pages. Every comment that is posted or deleted bumps a feed
+ * version kept in memcache, so such a write on any instance makes every cached page stale. Likes
+ * do not: pages hold only the likes stored on the comments, and readers add the like counter
+ * totals per request. A stale page keeps being served while a single request rebuilds it, so a
+ * burst of readers after a write only causes one rebuild per page.
+ *
+ * <p>Pages that are not cached at all are loaded once per instance: concurrent requests for the
+ * same page wait for the first one. Across instances, a memcache lock lets one request build each
+ * version of a page and share it through memcache. Requests on other instances poll for that copy
+ * for at most {@code LOCK_WAIT_MILLIS}, then load the page themselves.
+ */
+public class CommentFeedCache {
+
+  private static final String VERSION_KEY = "comment-feed-version";
+  private static final String PAGE_KEY_PREFIX = "comment-feed-page:";
+  private static final String LOCK_KEY_PREFIX = "comment-feed-lock:";
+  // A lock outlives a build that is still running, and expires if its holder died.
+  private static final Expiration LOCK_EXPIRATION = Expiration.byDeltaSeconds(10);
+  // Shared pages are keyed by version, so they only need to last for a burst of readers.
+  private static final Expiration SHARED_PAGE_EXPIRATION = Expiration.byDeltaSeconds(60);
+  // Kept short so that a slow build on another instance holds up request threads only briefly.
+  private static final long LOCK_WAIT_MILLIS = 200;
+  private static final long LOCK_POLL_MILLIS = 50;
+  private static final int MAX_ENTRIES = 200;
+  private static final CommentFeedCache INSTANCE = new CommentFeedCache();
+
+  private static final class Entry {
+    private final Object page;
+    private final long version;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private Entry(Object page, long version) {
+      this.page = page;
+      this.version = version;
+    }
+  }
+
+  private static final Logger LOGGER = Logger.getLogger(CommentFeedCache.class.getName());
+
+  private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
+  // Least recently used pages are dropped once there are more than MAX_ENTRIES.
+  private final Map<String, Entry> entries = Collections.synchronizedMap(
+      new LinkedHashMap<String, Entry>(16, 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+          return size() > MAX_ENTRIES;
+        }
+      });
+
+  // Loads in progress on this instance, keyed by version and cache key.
+  private final Map<String, CompletableFuture<Object>> pendingLoads = new ConcurrentHashMap<>();
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong coalescedMisses = new AtomicLong();
+
+  private CommentFeedCache() {}
+
+  public static CommentFeedCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the cached page for {@code cacheKey}. Missing pages, and stale pages that no other
+   * request is already rebuilding, are built with {@code loader} and cached. Pages of different
+   * types must use different cache keys, and should be serializable so they can be shared with
+   * other instances.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(String cacheKey, Supplier<T> loader) {
+    long version = getVersion();
+    Entry entry = entries.get(cacheKey);
+    if (entry != null && entry.version == version) {
+      hits.incrementAndGet();
+      return (T) entry.page;
+    }
+    if (entry != null && !entry.rebuilding.compareAndSet(false, true)) {
+      staleHits.incrementAndGet();
+      return (T) entry.page;
+    }
+
+    try {
+      return loadOnce(cacheKey, version, loader);
+    } finally {
+      if (entry != null) {
+        entry.rebuilding.set(false);
+      }
+    }
+  }
+
+  // Loads and caches a page, unless another request on this instance is already loading the same
+  // version of it, in which case this waits for that load instead.
+  @SuppressWarnings("unchecked")
+  private <T> T loadOnce(String cacheKey, long version, Supplier<T> loader) {
+    String loadKey = version + ":" + cacheKey;
+    CompletableFuture<Object> load = new CompletableFuture<>();
+    CompletableFuture<Object> pendingLoad = pendingLoads.putIfAbsent(loadKey, load);
+    if (pendingLoad != null) {
+      coalescedMisses.incrementAndGet();
+      try {
+        return (T) pendingLoad.join();
+      } catch (CompletionException e) {
+        throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+      }
+    }
+
+    misses.incrementAndGet();
+    try {
+      T page = loadShared(cacheKey, version, loader);
+      entries.put(cacheKey, new Entry(page, version));
+      load.complete(page);
+      return page;
+    } catch (RuntimeException e) {
+      load.completeExceptionally(e);
+      throw e;
+    } finally {
+      pendingLoads.remove(loadKey, load);
+    }
+  }
+
+  // Returns the copy of a page version that another instance built, or builds and shares it while
+  // holding the lock for that version. Requests that find the lock taken wait a short while for
+  // the shared copy, then build the page themselves rather than keep the reader waiting.
+  @SuppressWarnings("unchecked")
+  private <T> T loadShared(String cacheKey, long version, Supplier<T> loader) {
+    String pageKey = PAGE_KEY_PREFIX + version + ":" + cacheKey;
+    Object sharedPage = memcache.get(pageKey);
+    if (sharedPage != null) {
+      return (T) sharedPage;
+    }
+
+    String lockKey = LOCK_KEY_PREFIX + version + ":" + cacheKey;
+    boolean locked = memcache.put(lockKey, Boolean.TRUE, LOCK_EXPIRATION,
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    if (!locked) {
+      long deadline = System.currentTimeMillis() + LOCK_WAIT_MILLIS;
+      while (System.currentTimeMillis() < deadline) {
+        try {
+          Thread.sleep(LOCK_POLL_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+        sharedPage = memcache.get(pageKey);
+        if (sharedPage != null) {
+          return (T) sharedPage;
+        }
+      }
+    }
+
+    try {
+      T page = loader.get();
+      if (page instanceof Serializable) {
+        try {
+          memcache.put(pageKey, page, SHARED_PAGE_EXPIRATION);
+        } catch (IllegalArgumentException | MemcacheServiceException e) {
+          // Pages too large for memcache are still cached on this instance.
+          LOGGER.log(Level.INFO, "Could not share feed page " + cacheKey + ": " + e.getMessage());
+        }
+      }
+      return page;
+    } finally {
+      if (locked) {
+        memcache.delete(lockKey);
+      }
+    }
+  }
+
+  /**
+   * Marks every cached page on every instance as stale. Call after comments are posted or deleted.
+   */
+  public void invalidate() {
+    // If the version was evicted from memcache, restart it from the current time so that it is
+    // still newer than any version a cached page was built with.
+    memcache.increment(VERSION_KEY, 1, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns hit and miss counts since this instance started, and the fraction of requests served
+   * from the cache. Stale pages served during a rebuild count as hits. Coalesced misses waited for
+   * a load that another request on this instance had already started.
+   */
+  public Map<String, Number> getStats() {
+    long numHits = hits.get();
+    long numStaleHits = staleHits.get();
+    long numMisses = misses.get();
+    long numCoalescedMisses = coalescedMisses.get();
+    long numRequests = numHits + numStaleHits + numMisses + numCoalescedMisses;
+
+    Map<String, Number> stats = new LinkedHashMap<>();
+    stats.put("hits", numHits);
+    stats.put("staleHits", numStaleHits);
+    stats.put("misses", numMisses);
+    stats.put("coalescedMisses", numCoalescedMisses);
+    stats.put("hitRate", numRequests == 0 ? 0 : (double) (numHits + numStaleHits) / numRequests);
+    return stats;
+  }
+
+  private long getVersion() {
+    Object version = memcache.get(VERSION_KEY);
+    if (version == null) {
+      memcache.put(VERSION_KEY, System.currentTimeMillis(), null,
+          MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+      version = memcache.get(VERSION_KEY);
+    }
+    return version == null ? 0 : ((Number) version).longValue();
+  }
+}
@@ -0,0 +1,119 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moderation jobs that delete every comment matching a filter. Each batch deletes the matching
+ * comments among the next comments that pass the Datastore filters, and counts them as "deleted".
+ */
+public final class CommentModeration extends BatchJob {
+
+  public static final String WORKER_URL = "/moderate-comments-worker";
+
+  private static final int BATCH_SIZE = 500;
+  private static final CommentModeration INSTANCE = new CommentModeration();
+
+  private CommentModeration() {
+    super("ModerationJob", WORKER_URL, BATCH_SIZE, "deleted");
+  }
+
+  public static CommentModeration getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts a job deleting the comments that match every given filter, and returns its key. Null
+   * filters are ignored, but at least one must be set.
+   *
+   * @param email only delete comments posted by this email
+   * @param after only delete comments posted at or after this time
+   * @param before only delete comments posted before this time
+   * @param contains only delete comments whose content contains this text, ignoring case
+   */
+  public Key startJob(String email, Date after, Date before, String contains) {
+    if (email == null && after == null && before == null && contains == null) {
+      throw new IllegalArgumentException("At least one filter is required.");
+    }
+    Map<String, Object> parameters = new HashMap<>();
+    parameters.put("email", email);
+    parameters.put("after", after);
+    parameters.put("before", before);
+    parameters.put("contains", contains == null ? null : contains.toLowerCase());
+    return start(parameters);
+  }
+
+  @Override
+  protected Query buildQuery(Entity job) {
+    Query query = new Query("Comment");
+    Filter filter = buildFilter(job);
+    if (filter != null) {
+      query.setFilter(filter);
+    }
+    // Matching on content needs the whole entity. Otherwise the keys are enough.
+    if (job.getProperty("contains") == null) {
+      query.setKeysOnly();
+    }
+    return query;
+  }
+
+  @Override
+  protected void processBatch(Entity job, List<Entity> comments) {
+    String contains = (String) job.getProperty("contains");
+    List<Key> commentKeys = new ArrayList<>();
+    for (Entity comment : comments) {
+      String content = (String) comment.getProperty("content");
+      if (contains == null || (content != null && content.toLowerCase().contains(contains))) {
+        commentKeys.add(comment.getKey());
+      }
+    }
+    CommentDeleter.deleteComments(commentKeys);
+    addToCounter(job, "deleted", commentKeys.size());
+  }
+
+  // Combines the Datastore filters of a job. Content matching is done in memory instead. An email
+  // filter together with a time range needs the (email, timestamp) index in
+  // datastore-indexes.xml.
+  private static Filter buildFilter(Entity job) {
+    List<Filter> filters = new ArrayList<>();
+    if (job.getProperty("email") != null) {
+      filters.add(new FilterPredicate("email", FilterOperator.EQUAL, job.getProperty("email")));
+    }
+    if (job.getProperty("after") != null) {
+      filters.add(new FilterPredicate(
+          "timestamp", FilterOperator.GREATER_THAN_OR_EQUAL, job.getProperty("after")));
+    }
+    if (job.getProperty("before") != null) {
+      filters.add(
+          new FilterPredicate("timestamp", FilterOperator.LESS_THAN, job.getProperty("before")));
+    }
+    if (filters.isEmpty()) {
+      return null;
+    }
+    return filters.size() == 1 ? filters.get(0) : CompositeFilterOperator.and(filters);
+  }
+}
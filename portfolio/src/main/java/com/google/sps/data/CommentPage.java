@@ -0,0 +1,51 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Class containing one page of comments and where the next page starts.
+ *
+ * @param <T> how each comment is represented, such as a full {@link Comment} or a
+ *     {@link CommentSummary}
+ */
+public class CommentPage<T> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final List<T> comments;
+  private final String nextCursor;
+
+  /**
+   * Constructs a CommentPage.
+   *
+   * @param comments comments on this page, in display order
+   * @param nextCursor opaque cursor for the next page, or null if this is the last page
+   */
+  public CommentPage(List<T> comments, String nextCursor) {
+    this.comments = comments;
+    this.nextCursor = nextCursor;
+  }
+
+  public List<T> getComments() {
+    return comments;
+  }
+
+  public String getNextCursor() {
+    return nextCursor;
+  }
+}
@@ -0,0 +1,75 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/** Converts Comment entities read from Datastore into {@link Comment} objects. */
+public final class CommentReader {
+
+  private CommentReader() {
+    // Disallow instances.
+  }
+
+  /**
+   * Converts the entities to comments with their like totals, read in one batch, but without
+   * per-user state.
+   */
+  public static List<Comment> toComments(List<Entity> entities) {
+    List<Key> commentKeys = new ArrayList<>();
+    for (Entity entity : entities) {
+      commentKeys.add(entity.getKey());
+    }
+    return toComments(entities, Likes.countLikes(commentKeys));
+  }
+
+  /**
+   * Converts the entities to comments holding only the likes stored on the entities, made before
+   * the like counters existed. The counter totals can be added later with
+   * {@link Likes#addCountedLikes}.
+   */
+  public static List<Comment> toCommentsWithStoredLikes(List<Entity> entities) {
+    return toComments(entities, Collections.<Key, Long>emptyMap());
+  }
+
+  // Converts the entities to comments, adding the given counter totals to their stored likes.
+  private static List<Comment> toComments(List<Entity> entities, Map<Key, Long> likeCounts) {
+    List<Comment> commentsList = new ArrayList<>();
+
+    for (Entity entity : entities) {
+      Key key = entity.getKey();
+      String email = (String) entity.getProperty("email");
+      String name = (String) entity.getProperty("name");
+      String content = (String) entity.getProperty("content");
+      // Likes made before the counters existed are still in the numLikes property.
+      int numLikes = (int) ((long) entity.getProperty("numLikes")
+          + likeCounts.getOrDefault(key, 0L));
+      Date timestamp = (Date) entity.getProperty("timestamp");
+
+      Comment comment = new Comment(email, name, content, CommentSanitizer.getAuthorHtml(entity),
+          CommentSanitizer.getContentHtml(entity), numLikes, /* likedByUser= */ false, timestamp,
+          KeyFactory.keyToString(key));
+      commentsList.add(comment);
+    }
+    return commentsList;
+  }
+}
@@ -0,0 +1,59 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The job that adds every existing comment to the {@link CommentSearchIndex}. Each batch indexes
+ * the next comments and counts them as "indexed". Documents are keyed by comment, so a retried
+ * batch replaces the documents it already wrote.
+ */
+public final class CommentReindex extends BatchJob {
+
+  public static final String WORKER_URL = "/reindex-comments-worker";
+
+  // The search index accepts at most 200 documents per put.
+  private static final int BATCH_SIZE = 200;
+  private static final CommentReindex INSTANCE = new CommentReindex();
+
+  private CommentReindex() {
+    super("ReindexJob", WORKER_URL, BATCH_SIZE, "indexed");
+  }
+
+  public static CommentReindex getInstance() {
+    return INSTANCE;
+  }
+
+  /** Starts a reindex job and returns its key. */
+  public Key startJob() {
+    return start(Collections.emptyMap());
+  }
+
+  @Override
+  protected Query buildQuery(Entity job) {
+    return new Query("Comment");
+  }
+
+  @Override
+  protected void processBatch(Entity job, List<Entity> comments) {
+    CommentSearchIndex.reindexAll(comments);
+    addToCounter(job, "indexed", comments.size());
+  }
+}
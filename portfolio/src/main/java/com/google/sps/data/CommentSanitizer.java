@@ -0,0 +1,114 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Text;
+
+/**
+ * Cleans the text of new comments and renders it as HTML that is safe to insert into a page. The
+ * HTML is stored with each comment when it is written, so reading comments does no escaping.
+ */
+public final class CommentSanitizer {
+
+  private static final String CONTENT_HTML_PROPERTY = "contentHtml";
+  private static final String AUTHOR_HTML_PROPERTY = "authorHtml";
+
+  private CommentSanitizer() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns the text with line endings normalized to "\n", other control characters removed, and
+   * surrounding whitespace trimmed. Returns an empty string for null.
+   */
+  public static String clean(String text) {
+    if (text == null) {
+      return "";
+    }
+    String normalized = text.replace("\r\n", "\n").replace('\r', '\n');
+    StringBuilder cleaned = new StringBuilder(normalized.length());
+    for (int i = 0; i < normalized.length(); i++) {
+      char c = normalized.charAt(i);
+      if (!Character.isISOControl(c) || c == '\n' || c == '\t') {
+        cleaned.append(c);
+      }
+    }
+    return cleaned.toString().trim();
+  }
+
+  /** Returns the text as HTML, with markup characters escaped and line breaks kept. */
+  public static String toHtml(String text) {
+    if (text == null) {
+      return "";
+    }
+    StringBuilder html = new StringBuilder(text.length() + 16);
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      switch (c) {
+        case '&':
+          html.append("&amp;");
+          break;
+        case '<':
+          html.append("&lt;");
+          break;
+        case '>':
+          html.append("&gt;");
+          break;
+        case '"':
+          html.append("&quot;");
+          break;
+        case '\'':
+          html.append("&#39;");
+          break;
+        case '\n':
+          html.append("<br>");
+          break;
+        default:
+          html.append(c);
+      }
+    }
+    return html.toString();
+  }
+
+  /** Returns the HTML shown as a comment's author: its name, or the poster's email if anonymous. */
+  public static String authorToHtml(String name, String email) {
+    boolean showEmail = "anonymous".equals(name) && email != null && !email.isEmpty();
+    return toHtml(showEmail ? email : name);
+  }
+
+  /** Stores the rendered HTML of a comment's content and author on its entity. */
+  public static void addRenderedHtml(Entity comment) {
+    // Text properties have no length limit, and escaping can make the HTML longer than the text.
+    comment.setUnindexedProperty(CONTENT_HTML_PROPERTY,
+        new Text(toHtml((String) comment.getProperty("content"))));
+    comment.setUnindexedProperty(AUTHOR_HTML_PROPERTY, new Text(authorToHtml(
+        (String) comment.getProperty("name"), (String) comment.getProperty("email"))));
+  }
+
+  /** Returns the stored content HTML of a comment, rendering it for comments stored without. */
+  public static String getContentHtml(Entity comment) {
+    Text html = (Text) comment.getProperty(CONTENT_HTML_PROPERTY);
+    return html != null ? html.getValue() : toHtml((String) comment.getProperty("content"));
+  }
+
+  /** Returns the stored author HTML of a comment, rendering it for comments stored without. */
+  public static String getAuthorHtml(Entity comment) {
+    Text html = (Text) comment.getProperty(AUTHOR_HTML_PROPERTY);
+    return html != null
+        ? html.getValue()
+        : authorToHtml((String) comment.getProperty("name"), (String) comment.getProperty("email"));
+  }
+}
@@ -0,0 +1,196 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.search.Cursor;
+import com.google.appengine.api.search.Document;
+import com.google.appengine.api.search.Field;
+import com.google.appengine.api.search.Index;
+import com.google.appengine.api.search.IndexSpec;
+import com.google.appengine.api.search.MatchScorer;
+import com.google.appengine.api.search.Query;
+import com.google.appengine.api.search.QueryOptions;
+import com.google.appengine.api.search.Results;
+import com.google.appengine.api.search.ScoredDocument;
+import com.google.appengine.api.search.SearchException;
+import com.google.appengine.api.search.SearchServiceFactory;
+import com.google.appengine.api.search.SortExpression;
+import com.google.appengine.api.search.SortOptions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Full-text index over the name and content of every comment, kept in the App Engine Search API.
+ * Comments are added to the index when they are posted and removed when they are deleted, and
+ * search results are built from the indexed documents, so searching never reads Datastore.
+ */
+public final class CommentSearchIndex {
+
+  // The Search API accepts at most 200 documents per put or delete.
+  private static final int MAX_BATCH_SIZE = 200;
+  // Number of best matches that are ranked by score. Later matches keep the index order.
+  private static final int MAX_SCORED_RESULTS = 1000;
+
+  private static final Logger LOGGER = Logger.getLogger(CommentSearchIndex.class.getName());
+
+  private static final Index index = SearchServiceFactory.getSearchService()
+      .getIndex(IndexSpec.newBuilder().setName("comments").build());
+
+  private CommentSearchIndex() {
+    // Disallow instances.
+  }
+
+  /** Adds the comment to the index, replacing any earlier version of it. */
+  public static void index(Entity comment) {
+    indexAll(Collections.singletonList(comment));
+  }
+
+  /**
+   * Adds the comments to the index in batches. Failures are logged rather than thrown, so that a
+   * search outage does not stop comments from being posted.
+   */
+  public static void indexAll(List<Entity> comments) {
+    try {
+      reindexAll(comments);
+    } catch (SearchException e) {
+      LOGGER.log(Level.WARNING, "Comments could not be indexed: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Adds the comments to the index in batches, like {@link #indexAll}, but lets failures through
+   * so that a background job can retry them.
+   *
+   * @throws SearchException if the search service fails
+   */
+  public static void reindexAll(List<Entity> comments) {
+    List<Document> documents = new ArrayList<>();
+    for (Entity comment : comments) {
+      documents.add(toDocument(comment));
+    }
+    for (int start = 0; start < documents.size(); start += MAX_BATCH_SIZE) {
+      index.put(documents.subList(start, Math.min(start + MAX_BATCH_SIZE, documents.size())));
+    }
+  }
+
+  /** Removes the comments from the index. */
+  public static void removeAll(List<Key> commentKeys) {
+    List<String> documentIds = new ArrayList<>();
+    for (Key commentKey : commentKeys) {
+      documentIds.add(KeyFactory.keyToString(commentKey));
+    }
+    try {
+      for (int start = 0; start < documentIds.size(); start += MAX_BATCH_SIZE) {
+        index.delete(
+            documentIds.subList(start, Math.min(start + MAX_BATCH_SIZE, documentIds.size())));
+      }
+    } catch (SearchException e) {
+      LOGGER.log(Level.WARNING, "Comments could not be removed from the index: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns one page of the comments containing every word of {@code text}, best matches first.
+   *
+   * @param text words to search for, separated by whitespace
+   * @param limit maximum number of comments on the page
+   * @param cursor cursor returned with the previous page, or null for the first page
+   * @throws IllegalArgumentException if the text has no words or the cursor is invalid
+   */
+  public static CommentPage<Comment> search(String text, int limit, String cursor) {
+    Cursor startCursor = cursor == null || cursor.isEmpty()
+        ? Cursor.newBuilder().build() : Cursor.newBuilder().build(cursor);
+    SortOptions sortOptions = SortOptions.newBuilder()
+        .setMatchScorer(MatchScorer.newBuilder())
+        .addSortExpression(SortExpression.newBuilder()
+            .setExpression(SortExpression.SCORE_FIELD_NAME)
+            .setDirection(SortExpression.SortDirection.DESCENDING)
+            .setDefaultValueNumeric(0))
+        .setLimit(MAX_SCORED_RESULTS)
+        .build();
+    QueryOptions options = QueryOptions.newBuilder()
+        .setLimit(limit)
+        .setCursor(startCursor)
+        .setSortOptions(sortOptions)
+        .build();
+    Results<ScoredDocument> results =
+        index.search(Query.newBuilder().setOptions(options).build(toQueryString(text)));
+
+    List<Key> commentKeys = new ArrayList<>();
+    for (ScoredDocument document : results) {
+      commentKeys.add(KeyFactory.stringToKey(document.getId()));
+    }
+    Map<Key, Long> likeCounts = Likes.countLikes(commentKeys);
+
+    List<Comment> comments = new ArrayList<>();
+    int i = 0;
+    for (ScoredDocument document : results) {
+      Key key = commentKeys.get(i++);
+      int numLikes = (int) (document.getOnlyField("legacyLikes").getNumber() + likeCounts.get(key));
+      String email = document.getOnlyField("email").getAtom();
+      String name = document.getOnlyField("name").getText();
+      String content = document.getOnlyField("content").getText();
+      // Search results are rare compared to feed reads, so their HTML is rendered here rather
+      // than stored in the index as well.
+      comments.add(new Comment(email, name, content, CommentSanitizer.authorToHtml(name, email),
+          CommentSanitizer.toHtml(content), numLikes, /* likedByUser= */ false,
+          document.getOnlyField("timestamp").getDate(), document.getId()));
+    }
+
+    Cursor nextCursor = results.getCursor();
+    return new CommentPage<>(comments, nextCursor == null ? null : nextCursor.toWebSafeString());
+  }
+
+  // Builds the search document for a comment, keyed by the comment's key.
+  private static Document toDocument(Entity comment) {
+    Object legacyLikes = comment.getProperty("numLikes");
+    return Document.newBuilder()
+        .setId(KeyFactory.keyToString(comment.getKey()))
+        .addField(Field.newBuilder().setName("name").setText((String) comment.getProperty("name")))
+        .addField(
+            Field.newBuilder().setName("content").setText((String) comment.getProperty("content")))
+        .addField(
+            Field.newBuilder().setName("email").setAtom((String) comment.getProperty("email")))
+        .addField(Field.newBuilder().setName("timestamp")
+            .setDate((Date) comment.getProperty("timestamp")))
+        // Likes made before the counters existed never change, so they can be indexed as is.
+        .addField(Field.newBuilder().setName("legacyLikes")
+            .setNumber(legacyLikes == null ? 0 : ((Number) legacyLikes).doubleValue()))
+        .build();
+  }
+
+  // Quotes every word of the text, so that user input cannot use the query language and every
+  // word has to match.
+  private static String toQueryString(String text) {
+    StringBuilder query = new StringBuilder();
+    for (String word : text.replaceAll("[\"\\\\]", " ").trim().split("\\s+")) {
+      if (!word.isEmpty()) {
+        query.append(query.length() == 0 ? "" : " ").append('"').append(word).append('"');
+      }
+    }
+    if (query.length() == 0) {
+      throw new IllegalArgumentException("Search text must contain at least one word.");
+    }
+    return query.toString();
+  }
+}
@@ -0,0 +1,76 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Lean view of a comment holding only the fields a list view asked for. Fields that were not
+ * requested are null and are left out of the JSON, so only the key is always present.
+ */
+public class CommentSummary implements LikeableComment<CommentSummary>, Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final String key;
+  private final String email;
+  private final String name;
+  private final String content;
+  private final Integer numLikes;
+  private final Boolean likedByUser;
+  private final Date timestamp;
+
+  /**
+   * Constructs a CommentSummary. Every argument except the key may be null.
+   *
+   * @param key unique identifier for the comment
+   * @param email email of person who posted comment
+   * @param name name of person who posted comment
+   * @param content message left in the comment
+   * @param numLikes current number of likes the comment has
+   * @param likedByUser whether the user viewing the comment has liked it
+   * @param timestamp time that comment was posted
+   */
+  public CommentSummary(String key, String email, String name, String content, Integer numLikes,
+      Boolean likedByUser, Date timestamp) {
+    this.key = key;
+    this.email = email;
+    this.name = name;
+    this.content = content;
+    this.numLikes = numLikes;
+    this.likedByUser = likedByUser;
+    this.timestamp = timestamp;
+  }
+
+  @Override
+  public String getKey() {
+    return key;
+  }
+
+  @Override
+  public CommentSummary withLikedByUser(boolean likedByUser) {
+    return new CommentSummary(key, email, name, content, numLikes, likedByUser, timestamp);
+  }
+
+  @Override
+  public CommentSummary withAddedLikes(long numLikes) {
+    if (this.numLikes == null) {
+      return this;
+    }
+    return new CommentSummary(key, email, name, content, (int) (this.numLikes + numLikes),
+        likedByUser, timestamp);
+  }
+}
@@ -0,0 +1,79 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.PropertyProjection;
+import com.google.appengine.api.datastore.Query;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The job that rebuilds the stored {@link LikeLeaderboard} from every comment, when none is stored
+ * or to repair drift. Each batch adds the like totals of the next comments to a partial ranking
+ * kept on the job, trimmed to the comments the leaderboard tracks, and the last batch stores that
+ * ranking as the new leaderboard.
+ */
+public final class LeaderboardRebuild extends BatchJob {
+
+  public static final String WORKER_URL = "/rebuild-leaderboard-worker";
+
+  // Comments read per task.
+  private static final int BATCH_SIZE = 200;
+  private static final LeaderboardRebuild INSTANCE = new LeaderboardRebuild();
+
+  private LeaderboardRebuild() {
+    super("LeaderboardRebuildJob", WORKER_URL, BATCH_SIZE);
+  }
+
+  public static LeaderboardRebuild getInstance() {
+    return INSTANCE;
+  }
+
+  /** Starts a rebuild job and returns its key. */
+  public Key startJob() {
+    return start(Collections.emptyMap());
+  }
+
+  @Override
+  protected Query buildQuery(Entity job) {
+    return new Query("Comment").addProjection(new PropertyProjection("numLikes", Long.class));
+  }
+
+  @Override
+  protected void processBatch(Entity job, List<Entity> comments) {
+    List<Key> commentKeys = new ArrayList<>();
+    for (Entity comment : comments) {
+      commentKeys.add(comment.getKey());
+    }
+    Map<Key, Long> likeCounts = Likes.countLikes(commentKeys);
+
+    // Likes made before the counters existed are still in the numLikes property.
+    Map<Key, Long> counts = LikeLeaderboard.readBoard(job);
+    for (Entity comment : comments) {
+      counts.put(comment.getKey(),
+          (long) comment.getProperty("numLikes") + likeCounts.get(comment.getKey()));
+    }
+    LikeLeaderboard.writeBoard(job, LikeLeaderboard.trim(counts));
+  }
+
+  @Override
+  protected void finish(Entity job) {
+    LikeLeaderboard.storeBuild(LikeLeaderboard.readBoard(job));
+  }
+}
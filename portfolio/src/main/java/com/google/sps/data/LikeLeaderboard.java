@@ -0,0 +1,402 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The most liked comments and their like totals, stored in a single "Leaderboard" entity and kept
+ * in memory on each instance so that the most liked view never sorts the whole Comment kind.
+ *
+ * <p>Each instance applies the likes, unlikes and deletes it sees to its own copy right away, and
+ * every few seconds writes them to the stored leaderboard in one transaction and reads back the
+ * changes of the other instances. A liked comment that is not tracked yet joins once its total,
+ * read from its like counter, beats the last tracked comment. Requests never scan comments. A
+ * {@link LeaderboardRebuild} job builds the leaderboard from every comment when none is stored,
+ * and daily by cron to repair drift.
+ */
+public class LikeLeaderboard {
+
+  /** Number of comments in the most liked view. */
+  public static final int SIZE = 100;
+
+  // Comments just below the top SIZE are tracked too, so that one can move up when a ranked
+  // comment is deleted or loses likes.
+  private static final int CAPACITY = 2 * SIZE;
+  private static final long SYNC_INTERVAL_MILLIS = 5000;
+  private static final int MAX_RETRIES = 3;
+
+  private static final Key BOARD_KEY = KeyFactory.createKey("Leaderboard", "most-liked");
+  // Set while a rebuild started because the stored leaderboard was missing may still be running,
+  // so that other instances do not start one as well.
+  private static final String REBUILD_REQUESTED_KEY = "leaderboard-rebuild-requested";
+  private static final int REBUILD_REQUESTED_SECONDS = 600;
+
+  private static final Logger LOGGER = Logger.getLogger(LikeLeaderboard.class.getName());
+  private static final LikeLeaderboard INSTANCE = new LikeLeaderboard();
+
+  private static final class Entry implements Comparable<Entry> {
+    private final Key commentKey;
+    private final long numLikes;
+
+    private Entry(Key commentKey, long numLikes) {
+      this.commentKey = commentKey;
+      this.numLikes = numLikes;
+    }
+
+    // Most likes first. Ties are broken by key so that distinct comments never compare equal.
+    @Override
+    public int compareTo(Entry other) {
+      int byLikes = Long.compare(other.numLikes, numLikes);
+      return byLikes != 0 ? byLikes : commentKey.compareTo(other.commentKey);
+    }
+  }
+
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
+  // Readers iterate the ranking without locking. Writers hold the lock on this object, and keep
+  // the entry of each ranked comment in entries.
+  private final ConcurrentSkipListSet<Entry> ranking = new ConcurrentSkipListSet<>();
+  private final Map<Key, Entry> entries = new HashMap<>();
+
+  // Changes seen on this instance that are not in the stored leaderboard yet, so that they can be
+  // applied again on top of a newly read copy. Guarded by the lock on this object.
+  private Map<Key, Long> pendingDeltas = new LinkedHashMap<>();
+  private Set<Key> pendingRemovals = new HashSet<>();
+  private long loadedRevision = -1;
+
+  private final AtomicBoolean syncing = new AtomicBoolean();
+  private volatile long lastSyncMillis;
+  private volatile long version;
+
+  private LikeLeaderboard() {}
+
+  public static LikeLeaderboard getInstance() {
+    return INSTANCE;
+  }
+
+  /** Records that the comment gained ({@code delta} = 1) or lost ({@code delta} = -1) a like. */
+  public void adjust(Key commentKey, long delta) {
+    synchronized (this) {
+      pendingDeltas.merge(commentKey, delta, Long::sum);
+      applyDelta(commentKey, delta);
+    }
+    syncIfDue();
+  }
+
+  /** Removes deleted comments from the leaderboard. */
+  public void removeAll(Collection<Key> commentKeys) {
+    synchronized (this) {
+      for (Key commentKey : commentKeys) {
+        pendingDeltas.remove(commentKey);
+        pendingRemovals.add(commentKey);
+        remove(commentKey);
+      }
+    }
+    syncIfDue();
+  }
+
+  /**
+   * Returns up to {@code limit} of the most liked comments, most likes first, skipping the first
+   * {@code offset}. Only the top {@link #SIZE} comments are ever returned.
+   */
+  public List<Key> getTop(int offset, int limit) {
+    syncIfDue();
+    List<Key> commentKeys = new ArrayList<>();
+    int end = Math.min(offset + limit, SIZE);
+    int rank = 0;
+    for (Entry entry : ranking) {
+      if (rank >= end) {
+        break;
+      }
+      if (rank >= offset) {
+        commentKeys.add(entry.commentKey);
+      }
+      rank++;
+    }
+    return commentKeys;
+  }
+
+  /**
+   * Returns a number that changes whenever the ranking on this instance changes, for use in cache
+   * keys.
+   */
+  public long getVersion() {
+    syncIfDue();
+    return version;
+  }
+
+  // Writes the changes seen on this instance to the stored leaderboard and reads back the changes
+  // of other instances, if the last sync was long enough ago and no other request is already
+  // doing it. Changes that could not be written are kept for the next sync.
+  private void syncIfDue() {
+    if (System.currentTimeMillis() - lastSyncMillis < SYNC_INTERVAL_MILLIS
+        || !syncing.compareAndSet(false, true)) {
+      return;
+    }
+    Map<Key, Long> deltas;
+    Set<Key> removals;
+    synchronized (this) {
+      deltas = pendingDeltas;
+      removals = pendingRemovals;
+      pendingDeltas = new LinkedHashMap<>();
+      pendingRemovals = new HashSet<>();
+    }
+    try {
+      Entity board = deltas.isEmpty() && removals.isEmpty()
+          ? datastore.get(BOARD_KEY) : storeChanges(deltas, removals);
+      synchronized (this) {
+        if (getRevision(board) != loadedRevision) {
+          load(readBoard(board), getRevision(board));
+        }
+      }
+    } catch (EntityNotFoundException e) {
+      // The rebuild reads every like from the counters, so the changes are not needed.
+      requestFirstRebuild();
+    } catch (DatastoreFailureException | ConcurrentModificationException e) {
+      LOGGER.log(Level.WARNING, "Leaderboard could not be synced: " + e.getMessage());
+      synchronized (this) {
+        for (Map.Entry<Key, Long> delta : deltas.entrySet()) {
+          if (!pendingRemovals.contains(delta.getKey())) {
+            pendingDeltas.merge(delta.getKey(), delta.getValue(), Long::sum);
+          }
+        }
+        pendingRemovals.addAll(removals);
+      }
+    } finally {
+      lastSyncMillis = System.currentTimeMillis();
+      syncing.set(false);
+    }
+  }
+
+  // Applies the changes to the stored leaderboard in one transaction and returns the result.
+  // Comments that are not tracked yet join with the total of their like counter, if it beats the
+  // last tracked comment.
+  private static Entity storeChanges(Map<Key, Long> deltas, Set<Key> removals)
+      throws EntityNotFoundException {
+    Map<Key, Long> totals = null;
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        Entity board = datastore.get(transaction, BOARD_KEY);
+        Map<Key, Long> counts = readBoard(board);
+        List<Key> untracked = new ArrayList<>();
+        for (Map.Entry<Key, Long> delta : deltas.entrySet()) {
+          Long count = counts.get(delta.getKey());
+          if (count != null) {
+            counts.put(delta.getKey(), count + delta.getValue());
+          } else if (delta.getValue() > 0) {
+            untracked.add(delta.getKey());
+          }
+        }
+        if (!untracked.isEmpty()) {
+          // Read outside of the transaction, and only once, since totals only grow by the likes
+          // that later syncs add anyway.
+          if (totals == null) {
+            totals = countTotals(untracked);
+          }
+          for (Key commentKey : untracked) {
+            if (totals.containsKey(commentKey)) {
+              counts.put(commentKey, totals.get(commentKey));
+            }
+          }
+        }
+        counts.keySet().removeAll(removals);
+
+        writeBoard(board, trim(counts));
+        board.setUnindexedProperty("revision", getRevision(board) + 1);
+        datastore.put(transaction, board);
+        transaction.commit();
+        return board;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_RETRIES) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  // Returns the like totals of the comments that still exist. Likes made before the counters
+  // existed are still in the numLikes property.
+  private static Map<Key, Long> countTotals(List<Key> commentKeys) {
+    Map<Key, Entity> comments = datastore.get(commentKeys);
+    Map<Key, Long> likeCounts = Likes.countLikes(comments.keySet());
+    Map<Key, Long> totals = new HashMap<>();
+    for (Entity comment : comments.values()) {
+      totals.put(comment.getKey(),
+          (long) comment.getProperty("numLikes") + likeCounts.get(comment.getKey()));
+    }
+    return totals;
+  }
+
+  // Replaces the local ranking with a stored copy, and applies the local changes that are not in
+  // it yet. Callers hold the lock on this object.
+  private void load(Map<Key, Long> counts, long revision) {
+    ranking.clear();
+    entries.clear();
+    for (Map.Entry<Key, Long> count : counts.entrySet()) {
+      apply(count.getKey(), count.getValue());
+    }
+    for (Map.Entry<Key, Long> delta : pendingDeltas.entrySet()) {
+      applyDelta(delta.getKey(), delta.getValue());
+    }
+    for (Key commentKey : pendingRemovals) {
+      remove(commentKey);
+    }
+    loadedRevision = revision;
+    version++;
+  }
+
+  // Starts a rebuild when no leaderboard has been stored yet, unless another instance already
+  // started one recently.
+  private static void requestFirstRebuild() {
+    if (memcache.put(REBUILD_REQUESTED_KEY, Boolean.TRUE,
+        Expiration.byDeltaSeconds(REBUILD_REQUESTED_SECONDS),
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+      LeaderboardRebuild.getInstance().startJob();
+    }
+  }
+
+  // Replaces the stored leaderboard with a finished rebuild. Changes that instances synced while
+  // the rebuild ran may be missing from it until those comments are liked again.
+  static void storeBuild(Map<Key, Long> counts) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        long revision;
+        try {
+          revision = getRevision(datastore.get(transaction, BOARD_KEY));
+        } catch (EntityNotFoundException e) {
+          revision = 0;
+        }
+        Entity board = new Entity(BOARD_KEY);
+        writeBoard(board, counts);
+        board.setUnindexedProperty("revision", revision + 1);
+        datastore.put(transaction, board);
+        transaction.commit();
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_RETRIES) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  // Returns the number of times the stored leaderboard was written. Boards stored before it was
+  // counted start at zero.
+  private static long getRevision(Entity board) {
+    Object revision = board.getProperty("revision");
+    return revision == null ? 0 : (long) revision;
+  }
+
+  // Keeps the CAPACITY comments with the most likes, most likes first.
+  static Map<Key, Long> trim(Map<Key, Long> counts) {
+    TreeSet<Entry> sorted = new TreeSet<>();
+    for (Map.Entry<Key, Long> count : counts.entrySet()) {
+      sorted.add(new Entry(count.getKey(), count.getValue()));
+      if (sorted.size() > CAPACITY) {
+        sorted.pollLast();
+      }
+    }
+    Map<Key, Long> trimmed = new LinkedHashMap<>();
+    for (Entry entry : sorted) {
+      trimmed.put(entry.commentKey, entry.numLikes);
+    }
+    return trimmed;
+  }
+
+  @SuppressWarnings("unchecked")
+  static Map<Key, Long> readBoard(Entity board) {
+    Map<Key, Long> counts = new HashMap<>();
+    List<Key> commentKeys = (List<Key>) board.getProperty("commentKeys");
+    List<Long> likeCounts = (List<Long>) board.getProperty("likeCounts");
+    // Datastore stores empty lists as null.
+    if (commentKeys != null) {
+      for (int i = 0; i < commentKeys.size(); i++) {
+        counts.put(commentKeys.get(i), likeCounts.get(i));
+      }
+    }
+    return counts;
+  }
+
+  static void writeBoard(Entity board, Map<Key, Long> counts) {
+    board.setUnindexedProperty("commentKeys", new ArrayList<>(counts.keySet()));
+    board.setUnindexedProperty("likeCounts", new ArrayList<>(counts.values()));
+  }
+
+  // Adds a delta to the total of a tracked comment. Untracked comments can only join at the next
+  // sync, which reads their totals. Callers hold the lock on this object.
+  private void applyDelta(Key commentKey, long delta) {
+    Entry entry = entries.get(commentKey);
+    if (entry != null) {
+      apply(commentKey, entry.numLikes + delta);
+    }
+  }
+
+  // Sets the like total of a comment in the local ranking. Callers hold the lock on this object.
+  private void apply(Key commentKey, long numLikes) {
+    remove(commentKey);
+    Entry entry = new Entry(commentKey, numLikes);
+    ranking.add(entry);
+    entries.put(commentKey, entry);
+    if (ranking.size() > CAPACITY) {
+      entries.remove(ranking.pollLast().commentKey);
+    }
+    version++;
+  }
+
+  // Removes a comment from the local ranking. Callers hold the lock on this object.
+  private void remove(Key commentKey) {
+    Entry entry = entries.remove(commentKey);
+    if (entry != null) {
+      ranking.remove(entry);
+      version++;
+    }
+  }
+}
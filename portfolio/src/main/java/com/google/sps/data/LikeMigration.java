@@ -0,0 +1,103 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Query;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The job that moves likes stored in the old JSON "userLikes" property of each Comment into Like
+ * entities, and removes the property. Each batch migrates the comments among the next ones that
+ * still have the property, and counts them as "migrated".
+ *
+ * <p>The like totals of migrated comments are already in their numLikes property, so the like
+ * counters are left alone. Like entities have deterministic keys, so a retried batch rewrites the
+ * same entities instead of adding likes twice.
+ */
+public final class LikeMigration extends BatchJob {
+
+  public static final String WORKER_URL = "/migrate-likes-worker";
+
+  // Comments read per task. Each may carry many likes, so writes are split into batch puts.
+  private static final int BATCH_SIZE = 100;
+  // Datastore accepts at most 500 entities per batch put.
+  private static final int MAX_BATCH_PUT_SIZE = 500;
+  private static final Type USER_LIKES_TYPE = new TypeToken<Set<String>>(){}.getType();
+  private static final LikeMigration INSTANCE = new LikeMigration();
+
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final Gson gson = new Gson();
+
+  private LikeMigration() {
+    super("LikeMigrationJob", WORKER_URL, BATCH_SIZE, "migrated");
+  }
+
+  public static LikeMigration getInstance() {
+    return INSTANCE;
+  }
+
+  /** Starts a migration job and returns its key. */
+  public Key startJob() {
+    return start(Collections.emptyMap());
+  }
+
+  @Override
+  protected Query buildQuery(Entity job) {
+    return new Query("Comment");
+  }
+
+  @Override
+  protected void processBatch(Entity job, List<Entity> comments) {
+    // Likes are written before the comments they came from, so a batch that fails part way still
+    // has the property on every comment whose likes may be missing.
+    List<Entity> likes = new ArrayList<>();
+    List<Entity> migratedComments = new ArrayList<>();
+    for (Entity comment : comments) {
+      if (!comment.hasProperty("userLikes")) {
+        continue;
+      }
+      Set<String> userLikes =
+          gson.fromJson((String) comment.getProperty("userLikes"), USER_LIKES_TYPE);
+      if (userLikes != null) {
+        for (String userEmail : userLikes) {
+          likes.add(Likes.createLike(comment.getKey(), userEmail));
+        }
+      }
+      comment.removeProperty("userLikes");
+      migratedComments.add(comment);
+    }
+    put(likes);
+    put(migratedComments);
+    addToCounter(job, "migrated", migratedComments.size());
+  }
+
+  // Writes the entities in batches of at most MAX_BATCH_PUT_SIZE.
+  private static void put(List<Entity> entities) {
+    for (int start = 0; start < entities.size(); start += MAX_BATCH_PUT_SIZE) {
+      datastore.put(
+          entities.subList(start, Math.min(start + MAX_BATCH_PUT_SIZE, entities.size())));
+    }
+  }
+}
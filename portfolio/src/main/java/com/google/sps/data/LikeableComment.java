@@ -0,0 +1,35 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+/**
+ * A view of a comment that can be marked as liked by the user viewing it.
+ *
+ * @param <T> the implementing type, returned by {@link #withLikedByUser}
+ */
+public interface LikeableComment<T extends LikeableComment<T>> {
+
+  /** Returns the stringified Datastore key of the comment. */
+  String getKey();
+
+  /** Returns a copy of this view with a different {@code likedByUser} flag. */
+  T withLikedByUser(boolean likedByUser);
+
+  /**
+   * Returns a copy of this view with {@code numLikes} more likes. Views without a like total are
+   * returned unchanged.
+   */
+  T withAddedLikes(long numLikes);
+}
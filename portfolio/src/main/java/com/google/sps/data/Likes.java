@@ -0,0 +1,240 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for storing likes outside of the Comment entity. Each like is a small "Like" entity
+ * whose key is derived from the comment and the user, and like totals are kept in a
+ * {@link ShardedCounter} per comment.
+ *
+ * <p>Liking and unliking are idempotent. A memcache entry per existing like lets repeated likes be
+ * rejected with one memcache call, and the like and its counter increment are written in one
+ * transaction, so a like is counted exactly once however often it is retried.
+ */
+public final class Likes {
+
+  public static final String KIND = "Like";
+
+  private static final int MAX_RETRIES = 3;
+
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
+  private Likes() {
+    // Disallow instances.
+  }
+
+  /** Returns the key of the like that {@code userEmail} left on the comment. */
+  public static Key getLikeKey(Key commentKey, String userEmail) {
+    return KeyFactory.createKey(KIND, KeyFactory.keyToString(commentKey) + "|" + userEmail);
+  }
+
+  /** Creates the entity recording that {@code userEmail} liked the comment. */
+  public static Entity createLike(Key commentKey, String userEmail) {
+    Entity like = new Entity(getLikeKey(commentKey, userEmail));
+    like.setProperty("commentKey", commentKey);
+    like.setProperty("userEmail", userEmail);
+    like.setUnindexedProperty("timestamp", new Date());
+    return like;
+  }
+
+  /** Returns the counter holding the number of likes on the comment. */
+  public static ShardedCounter getCounter(Key commentKey) {
+    return new ShardedCounter("likes:" + KeyFactory.keyToString(commentKey));
+  }
+
+  /**
+   * Records that {@code userEmail} liked the comment, unless they already had. Returns whether a
+   * new like was recorded.
+   */
+  public static boolean addLike(Key commentKey, String userEmail) {
+    Key likeKey = getLikeKey(commentKey, userEmail);
+    // Only one request can add the memcache entry, so concurrent duplicates stop here. The entry
+    // may have been evicted, so a successful claim is still checked against Datastore.
+    if (!memcache.put(getCacheKey(likeKey), Boolean.TRUE, null,
+        MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+      return false;
+    }
+    try {
+      WriteBehindQueue writeBehindQueue = WriteBehindQueue.getInstance();
+      if (writeBehindQueue.isEnabled()) {
+        if (datastore.get(Collections.singletonList(likeKey)).containsKey(likeKey)) {
+          return false;
+        }
+        // The buffer drops likes it already has or that reach Datastore first, so each like adds
+        // to the counter once. Buffered likes on the same comment share one increment.
+        return writeBehindQueue.addLike(createLike(commentKey, userEmail));
+      }
+      return updateLike(commentKey, userEmail, /* liked= */ true);
+    } catch (RuntimeException e) {
+      memcache.delete(getCacheKey(likeKey));
+      throw e;
+    }
+  }
+
+  /**
+   * Removes the like that {@code userEmail} left on the comment, if there is one. Returns whether
+   * a like was removed.
+   */
+  public static boolean removeLike(Key commentKey, String userEmail) {
+    // A like still in this instance's write buffer has to be written before it can be removed.
+    WriteBehindQueue writeBehindQueue = WriteBehindQueue.getInstance();
+    if (writeBehindQueue.isEnabled()) {
+      writeBehindQueue.flush();
+    }
+    boolean removed = updateLike(commentKey, userEmail, /* liked= */ false);
+    memcache.delete(getCacheKey(getLikeKey(commentKey, userEmail)));
+    return removed;
+  }
+
+  /** Returns the number of likes recorded by the like counters of each comment. */
+  public static Map<Key, Long> countLikes(Collection<Key> commentKeys) {
+    List<ShardedCounter> counters = new ArrayList<>();
+    for (Key commentKey : commentKeys) {
+      counters.add(getCounter(commentKey));
+    }
+    Map<String, Long> countsByName = ShardedCounter.getCounts(counters);
+
+    Map<Key, Long> counts = new HashMap<>();
+    for (Key commentKey : commentKeys) {
+      counts.put(commentKey, countsByName.get(getCounter(commentKey).getName()));
+    }
+    return counts;
+  }
+
+  // Creates or deletes the Like entity and adjusts the like counter in one cross-group
+  // transaction, unless the like is already in the wanted state. Returns whether it changed.
+  private static boolean updateLike(Key commentKey, String userEmail, boolean liked) {
+    Key likeKey = getLikeKey(commentKey, userEmail);
+    ShardedCounter counter = getCounter(commentKey);
+    long delta = liked ? 1 : -1;
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction =
+          datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        boolean exists;
+        try {
+          datastore.get(transaction, likeKey);
+          exists = true;
+        } catch (EntityNotFoundException e) {
+          exists = false;
+        }
+        if (exists == liked) {
+          return false;
+        }
+        if (liked) {
+          datastore.put(transaction, createLike(commentKey, userEmail));
+        } else {
+          datastore.delete(transaction, likeKey);
+        }
+        counter.increment(transaction, delta);
+        transaction.commit();
+        counter.adjustCachedTotal(delta);
+        return true;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_RETRIES) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  private static String getCacheKey(Key likeKey) {
+    return KIND + ":" + likeKey.getName();
+  }
+
+  /**
+   * Returns a copy of the page where the like counter totals are added to each comment's likes.
+   * Cached pages hold only the likes stored on the comments themselves, so that liking a comment
+   * does not make them stale.
+   */
+  public static <T extends LikeableComment<T>> CommentPage<T> addCountedLikes(
+      CommentPage<T> page) {
+    List<Key> commentKeys = new ArrayList<>();
+    for (T comment : page.getComments()) {
+      commentKeys.add(KeyFactory.stringToKey(comment.getKey()));
+    }
+    Map<Key, Long> likeCounts = countLikes(commentKeys);
+
+    List<T> countedComments = new ArrayList<>();
+    for (int i = 0; i < commentKeys.size(); i++) {
+      countedComments.add(
+          page.getComments().get(i).withAddedLikes(likeCounts.get(commentKeys.get(i))));
+    }
+    return new CommentPage<>(countedComments, page.getNextCursor());
+  }
+
+  /** Returns a copy of the page where the comments that {@code userEmail} has liked are marked. */
+  public static <T extends LikeableComment<T>> CommentPage<T> markLikedComments(
+      CommentPage<T> page, String userEmail) {
+    List<Key> commentKeys = new ArrayList<>();
+    for (T comment : page.getComments()) {
+      commentKeys.add(KeyFactory.stringToKey(comment.getKey()));
+    }
+    Set<Key> likedComments = findLikedComments(commentKeys, userEmail);
+    if (likedComments.isEmpty()) {
+      return page;
+    }
+
+    List<T> markedComments = new ArrayList<>();
+    for (int i = 0; i < commentKeys.size(); i++) {
+      T comment = page.getComments().get(i);
+      markedComments.add(likedComments.contains(commentKeys.get(i))
+          ? comment.withLikedByUser(true) : comment);
+    }
+    return new CommentPage<>(markedComments, page.getNextCursor());
+  }
+
+  /** Returns the comments that {@code userEmail} has liked, using one batch get of like keys. */
+  public static Set<Key> findLikedComments(List<Key> commentKeys, String userEmail) {
+    Set<Key> likedComments = new HashSet<>();
+    if (commentKeys.isEmpty()) {
+      return likedComments;
+    }
+    List<Key> likeKeys = new ArrayList<>();
+    for (Key commentKey : commentKeys) {
+      likeKeys.add(getLikeKey(commentKey, userEmail));
+    }
+    for (Entity like : datastore.get(likeKeys).values()) {
+      likedComments.add((Key) like.getProperty("commentKey"));
+    }
+    return likedComments;
+  }
+}
@@ -0,0 +1,333 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.gson.Gson;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Visit counts of map regions. Visits are added up in memory and written in batches as one
+ * increment of a {@link ShardedCounter} per region, so visit pings never read or rewrite the
+ * Region entity. Each region has one Region entity, keyed by its name, which records that the
+ * region exists and holds the visits counted before the counters existed. Only the countries of
+ * the map can be visited, so the set of regions stays bounded.
+ *
+ * <p>Where App Engine allows background threads, which needs basic or manual scaling, pending
+ * visits are written every {@code FLUSH_INTERVAL_MILLIS}. Otherwise they are written by the first
+ * visit or read on the same instance at least that long after the last write, so the visits of an
+ * instance that stops getting requests wait until it gets another one or shuts down cleanly, and
+ * are lost if it dies first.
+ *
+ * <p>Each instance also keeps the count of every region in memory, with its JSON form. Every
+ * write bumps a version kept in memcache. An instance applies its own writes to its counts, and
+ * only reloads them from Datastore when another instance has written, so reads cost one memcache
+ * call while nobody visits.
+ */
+public class RegionVisits {
+
+  private static final String KIND = "Region";
+  private static final String VERSION_KEY = "region-visits-version";
+  private static final long FLUSH_INTERVAL_MILLIS = 2000;
+
+  // Regions are the countries of the map chart, which names them by ISO 3166-1 alpha-2 code.
+  private static final Set<String> REGION_NAMES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList(Locale.getISOCountries())));
+
+  private static final Logger LOGGER = Logger.getLogger(RegionVisits.class.getName());
+  private static final RegionVisits INSTANCE = new RegionVisits();
+
+  /** Visit counts of every region as compact JSON, and an ETag identifying them. */
+  public static final class Snapshot {
+    private final String json;
+    private final String etag;
+
+    private Snapshot(String json) {
+      this.json = json;
+      this.etag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+    }
+
+    public String getJson() {
+      return json;
+    }
+
+    public String getEtag() {
+      return etag;
+    }
+  }
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+  private final Gson gson = new Gson();
+
+  // Visits not written yet, by region name. Entries are reset rather than removed when flushed, so
+  // a visit recorded during a flush is never lost.
+  private final Map<String, AtomicLong> pendingVisits = new ConcurrentHashMap<>();
+  // Regions whose Region entity is known to exist.
+  private final Set<String> knownRegions = ConcurrentHashMap.newKeySet();
+
+  private final AtomicBoolean flushing = new AtomicBoolean();
+  private volatile long lastFlushMillis = System.currentTimeMillis();
+  // Null if background threads are not available, in which case requests flush instead.
+  private final ScheduledExecutorService flusher;
+
+  // Written visit counts as of storedVersion, and the snapshot of them plus the pending visits.
+  // Guarded by the lock on this object. A null snapshot is rebuilt on the next read.
+  private Map<String, Long> storedCounts;
+  private long storedVersion;
+  private Snapshot snapshot;
+
+  private RegionVisits() {
+    ScheduledExecutorService timedFlusher = null;
+    try {
+      timedFlusher =
+          Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+      timedFlusher.scheduleWithFixedDelay(
+          this::timedFlush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.INFO, "No background threads, so region visits are written by requests: "
+          + e.getMessage());
+      if (timedFlusher != null) {
+        timedFlusher.shutdownNow();
+        timedFlusher = null;
+      }
+    }
+    flusher = timedFlusher;
+  }
+
+  public static RegionVisits getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns whether visits to the region can be recorded. */
+  public static boolean isKnownRegion(String regionName) {
+    return REGION_NAMES.contains(regionName);
+  }
+
+  /**
+   * Records one visit to the region.
+   *
+   * @throws IllegalArgumentException if the region is not known
+   */
+  public void recordVisit(String regionName) {
+    if (!isKnownRegion(regionName)) {
+      throw new IllegalArgumentException("Unknown region: " + regionName);
+    }
+    pendingVisits.computeIfAbsent(regionName, name -> new AtomicLong()).incrementAndGet();
+    synchronized (this) {
+      snapshot = null;
+    }
+    flushFromRequestIfDue();
+  }
+
+  /**
+   * Returns the visit counts of every region, including visits recorded on this instance that are
+   * not written yet.
+   */
+  public Snapshot getSnapshot() {
+    flushFromRequestIfDue();
+    long version = getVersion();
+    synchronized (this) {
+      if (storedCounts == null || storedVersion != version) {
+        storedCounts = loadCounts();
+        storedVersion = version;
+        snapshot = null;
+      }
+      if (snapshot == null) {
+        Map<String, Long> counts = new TreeMap<>(storedCounts);
+        for (Map.Entry<String, AtomicLong> pending : pendingVisits.entrySet()) {
+          if (pending.getValue().get() > 0) {
+            counts.merge(pending.getKey(), pending.getValue().get(), Long::sum);
+          }
+        }
+        snapshot = new Snapshot(gson.toJson(counts));
+      }
+      return snapshot;
+    }
+  }
+
+  /** Stops timed flushes and writes every pending visit. */
+  public void shutdown() {
+    if (flusher != null) {
+      flusher.shutdown();
+    }
+    flush();
+  }
+
+  /** Writes every pending visit. */
+  public void flush() {
+    Map<String, Long> written = new HashMap<>();
+    for (Map.Entry<String, AtomicLong> pending : pendingVisits.entrySet()) {
+      long delta = pending.getValue().getAndSet(0);
+      if (delta == 0) {
+        continue;
+      }
+      String regionName = pending.getKey();
+      try {
+        createRegionIfMissing(regionName);
+        getCounter(regionName).increment(delta);
+        written.put(regionName, delta);
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.WARNING, "Could not write visits to " + regionName + ", will retry: "
+            + e.getMessage());
+        pending.getValue().addAndGet(delta);
+      }
+    }
+    if (written.isEmpty()) {
+      return;
+    }
+
+    Long version = memcache.increment(VERSION_KEY, 1, System.currentTimeMillis());
+    synchronized (this) {
+      // The written visits left the pending counts, so they move to the stored counts. If another
+      // instance wrote in between, the stored counts are reloaded instead.
+      if (storedCounts != null && version != null && version == storedVersion + 1) {
+        for (Map.Entry<String, Long> delta : written.entrySet()) {
+          storedCounts.merge(delta.getKey(), delta.getValue(), Long::sum);
+        }
+        storedVersion = version;
+      } else {
+        storedCounts = null;
+      }
+      snapshot = null;
+    }
+  }
+
+  // Region entities are keyed by region name.
+  private static Key getRegionKey(String regionName) {
+    return KeyFactory.createKey(KIND, regionName);
+  }
+
+  // Reads the written visit count of every region from Datastore and the counters.
+  private Map<String, Long> loadCounts() {
+    // Regions saved before they were keyed by name can have several entities, so their legacy
+    // visits are added up by name.
+    Map<String, Long> visits = new HashMap<>();
+    for (Entity region : datastore.prepare(new Query(KIND)).asIterable()) {
+      String regionName = (String) region.getProperty("regionName");
+      Object numVisits = region.getProperty("numVisits");
+      visits.merge(regionName, numVisits == null ? 0 : (long) numVisits, Long::sum);
+    }
+
+    List<ShardedCounter> counters = new ArrayList<>();
+    for (String regionName : visits.keySet()) {
+      counters.add(getCounter(regionName));
+    }
+    Map<String, Long> counts = ShardedCounter.getCounts(counters);
+    for (Map.Entry<String, Long> entry : visits.entrySet()) {
+      entry.setValue(entry.getValue() + counts.get(getCounter(entry.getKey()).getName()));
+    }
+    return visits;
+  }
+
+  private long getVersion() {
+    Object version = memcache.get(VERSION_KEY);
+    if (version == null) {
+      // If the version was evicted, restart it from the current time so that it differs from any
+      // version an instance loaded its counts at.
+      memcache.put(VERSION_KEY, System.currentTimeMillis(), null,
+          MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+      version = memcache.get(VERSION_KEY);
+    }
+    return version == null ? 0 : ((Number) version).longValue();
+  }
+
+  // Runs on the background thread. An exception would cancel every later run, so it is logged.
+  private void timedFlush() {
+    try {
+      flushIfDue();
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.WARNING, "Region visits could not be written: " + e.getMessage());
+    }
+  }
+
+  // Lets requests do the timed flushes when there is no background thread for them.
+  private void flushFromRequestIfDue() {
+    if (flusher == null) {
+      flushIfDue();
+    }
+  }
+
+  // Flushes on the calling thread if the last flush was long enough ago and no other thread is
+  // already flushing.
+  private void flushIfDue() {
+    if (System.currentTimeMillis() - lastFlushMillis < FLUSH_INTERVAL_MILLIS
+        || !flushing.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      flush();
+    } finally {
+      lastFlushMillis = System.currentTimeMillis();
+      flushing.set(false);
+    }
+  }
+
+  // Creates the Region entity on the first visit, without overwriting one created concurrently.
+  private void createRegionIfMissing(String regionName) {
+    if (knownRegions.contains(regionName)) {
+      return;
+    }
+    Key regionKey = getRegionKey(regionName);
+    Transaction transaction = datastore.beginTransaction();
+    try {
+      try {
+        datastore.get(transaction, regionKey);
+      } catch (EntityNotFoundException e) {
+        Entity region = new Entity(regionKey);
+        region.setProperty("regionName", regionName);
+        region.setProperty("numVisits", 0L);
+        datastore.put(transaction, region);
+      }
+      transaction.commit();
+    } finally {
+      if (transaction.isActive()) {
+        transaction.rollback();
+      }
+    }
+    knownRegions.add(regionName);
+  }
+
+  private static ShardedCounter getCounter(String regionName) {
+    return new ShardedCounter("visits:" + regionName);
+  }
+}
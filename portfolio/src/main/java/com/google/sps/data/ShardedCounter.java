@@ -0,0 +1,196 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A counter that is split across several Datastore entities so that concurrent increments rarely
+ * touch the same entity. Each increment updates one randomly chosen shard, and reads add up all of
+ * the shards. Totals are cached in memcache for a short time so that most reads cost no Datastore
+ * calls.
+ */
+public class ShardedCounter {
+
+  private static final String SHARD_KIND = "CounterShard";
+  private static final String COUNT_PROPERTY = "count";
+  private static final String NAME_PROPERTY = "counterName";
+  private static final int NUM_SHARDS = 20;
+  private static final int MAX_RETRIES = 3;
+  // Datastore accepts at most 1000 keys per batch get.
+  private static final int MAX_BATCH_GET_SIZE = 1000;
+
+  // Increments that race with a cache fill can be missed by the cached total, so cached totals are
+  // only trusted for a short time.
+  private static final Expiration CACHE_EXPIRATION = Expiration.byDeltaSeconds(30);
+
+  private static final Logger LOGGER = Logger.getLogger(ShardedCounter.class.getName());
+  private static final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private static final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+
+  private final String name;
+
+  /**
+   * Constructs a ShardedCounter. Counters with the same name share the same count.
+   *
+   * @param name unique name of the counter
+   */
+  public ShardedCounter(String name) {
+    this.name = name;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** Adds one to the counter. */
+  public void increment() {
+    increment(1);
+  }
+
+  /** Adds {@code delta}, which may be negative, to one randomly chosen shard of the counter. */
+  public void increment(long delta) {
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction = datastore.beginTransaction();
+      try {
+        increment(transaction, delta);
+        transaction.commit();
+        break;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_RETRIES) {
+          throw e;
+        }
+        LOGGER.log(Level.INFO, "Retrying increment of counter " + name + ": " + e.getMessage());
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+    adjustCachedTotal(delta);
+  }
+
+  /**
+   * Adds {@code delta} to one randomly chosen shard as part of the caller's transaction, which
+   * must allow cross-group writes if it touches other entity groups. Once the transaction has
+   * committed, the caller must call {@link #adjustCachedTotal} with the same delta.
+   */
+  public void increment(Transaction transaction, long delta) {
+    Key shardKey = getShardKey(ThreadLocalRandom.current().nextInt(NUM_SHARDS));
+    Entity shard;
+    try {
+      shard = datastore.get(transaction, shardKey);
+    } catch (EntityNotFoundException e) {
+      shard = new Entity(shardKey);
+      shard.setUnindexedProperty(NAME_PROPERTY, name);
+      shard.setUnindexedProperty(COUNT_PROPERTY, 0L);
+    }
+    shard.setUnindexedProperty(COUNT_PROPERTY, (long) shard.getProperty(COUNT_PROPERTY) + delta);
+    datastore.put(transaction, shard);
+  }
+
+  /** Applies a committed increment to the cached total. */
+  public void adjustCachedTotal(long delta) {
+    // Only updates the cached total if there is one. Otherwise the next read sums the shards.
+    memcache.increment(getCacheKey(name), delta);
+  }
+
+  /** Returns the current value of the counter. */
+  public long getCount() {
+    return getCounts(Collections.singletonList(this)).get(name);
+  }
+
+  /**
+   * Returns the current values of several counters, keyed by counter name. Cached totals come from
+   * one memcache call, and the shards of every uncached counter are read in batch gets.
+   */
+  public static Map<String, Long> getCounts(Collection<ShardedCounter> counters) {
+    List<String> cacheKeys = new ArrayList<>();
+    for (ShardedCounter counter : counters) {
+      cacheKeys.add(getCacheKey(counter.name));
+    }
+    Map<String, Object> cached = memcache.getAll(cacheKeys);
+
+    Map<String, Long> counts = new HashMap<>();
+    List<Key> shardKeys = new ArrayList<>();
+    for (ShardedCounter counter : counters) {
+      Object cachedCount = cached.get(getCacheKey(counter.name));
+      if (cachedCount != null) {
+        counts.put(counter.name, ((Number) cachedCount).longValue());
+      } else {
+        counts.put(counter.name, 0L);
+        shardKeys.addAll(counter.getShardKeys());
+      }
+    }
+    if (shardKeys.isEmpty()) {
+      return counts;
+    }
+
+    for (int start = 0; start < shardKeys.size(); start += MAX_BATCH_GET_SIZE) {
+      Map<Key, Entity> shards = datastore.get(
+          shardKeys.subList(start, Math.min(start + MAX_BATCH_GET_SIZE, shardKeys.size())));
+      for (Entity shard : shards.values()) {
+        String counterName = (String) shard.getProperty(NAME_PROPERTY);
+        counts.put(counterName, counts.get(counterName) + (long) shard.getProperty(COUNT_PROPERTY));
+      }
+    }
+
+    Map<String, Long> uncachedCounts = new HashMap<>();
+    for (ShardedCounter counter : counters) {
+      if (!cached.containsKey(getCacheKey(counter.name))) {
+        uncachedCounts.put(getCacheKey(counter.name), counts.get(counter.name));
+      }
+    }
+    memcache.putAll(
+        uncachedCounts, CACHE_EXPIRATION, MemcacheService.SetPolicy.ADD_ONLY_IF_NOT_PRESENT);
+    return counts;
+  }
+
+  /** Returns the keys of every shard entity that may hold part of this counter. */
+  public List<Key> getShardKeys() {
+    List<Key> shardKeys = new ArrayList<>();
+    for (int shard = 0; shard < NUM_SHARDS; shard++) {
+      shardKeys.add(getShardKey(shard));
+    }
+    return shardKeys;
+  }
+
+  private Key getShardKey(int shard) {
+    return KeyFactory.createKey(SHARD_KIND, name + "#" + shard);
+  }
+
+  private static String getCacheKey(String name) {
+    return SHARD_KIND + ":" + name;
+  }
+}
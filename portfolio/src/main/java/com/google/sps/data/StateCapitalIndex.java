@@ -0,0 +1,159 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Two-dimensional k-d tree over the capitals in a {@link StateCapitals}, for finding the capitals
+ * nearest to a point and the capitals inside a bounding box without scanning every state.
+ *
+ * <p>The tree is balanced and stored implicitly: the capitals in positions [lo, hi) of the node
+ * array form a subtree whose root is at the middle position, split on latitude at even depths and
+ * on longitude at odd depths.
+ */
+public final class StateCapitalIndex {
+
+  private final StateCapitals stateCapitals;
+  private final int[] nodes;
+
+  private static final class Candidate {
+    private final int state;
+    private final double distance;
+
+    private Candidate(int state, double distance) {
+      this.state = state;
+      this.distance = distance;
+    }
+  }
+
+  public StateCapitalIndex(StateCapitals stateCapitals) {
+    this.stateCapitals = stateCapitals;
+    Integer[] order = new Integer[stateCapitals.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    build(order, 0, order.length, 0);
+    nodes = new int[order.length];
+    for (int i = 0; i < order.length; i++) {
+      nodes[i] = order[i];
+    }
+  }
+
+  /**
+   * Returns the positions in {@link StateCapitals} of the {@code k} capitals nearest to the point,
+   * nearest first. Distances are compared on an equirectangular projection centred on the point,
+   * which ranks capitals the same way as great-circle distance over the span of a country.
+   */
+  public int[] nearest(double lat, double lng, int k) {
+    double lngScale = Math.cos(Math.toRadians(lat));
+    // Max-heap of the best candidates so far, so the worst one is at the head.
+    PriorityQueue<Candidate> best = new PriorityQueue<>(
+        Comparator.comparingDouble((Candidate candidate) -> candidate.distance).reversed());
+    if (k > 0) {
+      searchNearest(0, nodes.length, 0, lat, lng, lngScale, k, best);
+    }
+
+    int[] result = new int[best.size()];
+    for (int i = result.length - 1; i >= 0; i--) {
+      result[i] = best.poll().state;
+    }
+    return result;
+  }
+
+  /**
+   * Returns the positions in {@link StateCapitals} of the capitals inside the box, including its
+   * edges, in no particular order.
+   */
+  public int[] within(double minLat, double minLng, double maxLat, double maxLng) {
+    List<Integer> found = new ArrayList<>();
+    searchWithin(0, nodes.length, 0, minLat, minLng, maxLat, maxLng, found);
+    int[] result = new int[found.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = found.get(i);
+    }
+    return result;
+  }
+
+  // Orders positions [lo, hi) so that the middle one splits the rest on the axis of the depth, and
+  // does the same for each half.
+  private void build(Integer[] order, int lo, int hi, int depth) {
+    if (hi - lo <= 1) {
+      return;
+    }
+    boolean byLat = depth % 2 == 0;
+    Arrays.sort(order, lo, hi, Comparator.comparingDouble(
+        (Integer state) -> byLat ? stateCapitals.getLat(state) : stateCapitals.getLng(state)));
+    int mid = (lo + hi) >>> 1;
+    build(order, lo, mid, depth + 1);
+    build(order, mid + 1, hi, depth + 1);
+  }
+
+  private void searchNearest(int lo, int hi, int depth, double lat, double lng, double lngScale,
+      int k, PriorityQueue<Candidate> best) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    int state = nodes[mid];
+    double dLat = stateCapitals.getLat(state) - lat;
+    double dLng = (stateCapitals.getLng(state) - lng) * lngScale;
+    best.add(new Candidate(state, dLat * dLat + dLng * dLng));
+    if (best.size() > k) {
+      best.poll();
+    }
+
+    // Searches the side of the split containing the point first, and the other side only if it
+    // can hold something closer than the worst candidate kept.
+    double axisDistance = depth % 2 == 0 ? -dLat : -dLng;
+    boolean pointBelow = axisDistance < 0;
+    int nearLo = pointBelow ? lo : mid + 1;
+    int nearHi = pointBelow ? mid : hi;
+    int farLo = pointBelow ? mid + 1 : lo;
+    int farHi = pointBelow ? hi : mid;
+    searchNearest(nearLo, nearHi, depth + 1, lat, lng, lngScale, k, best);
+    if (best.size() < k || axisDistance * axisDistance < best.peek().distance) {
+      searchNearest(farLo, farHi, depth + 1, lat, lng, lngScale, k, best);
+    }
+  }
+
+  private void searchWithin(int lo, int hi, int depth, double minLat, double minLng,
+      double maxLat, double maxLng, List<Integer> found) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    int state = nodes[mid];
+    double stateLat = stateCapitals.getLat(state);
+    double stateLng = stateCapitals.getLng(state);
+    if (stateLat >= minLat && stateLat <= maxLat && stateLng >= minLng && stateLng <= maxLng) {
+      found.add(state);
+    }
+
+    double split = depth % 2 == 0 ? stateLat : stateLng;
+    double min = depth % 2 == 0 ? minLat : minLng;
+    double max = depth % 2 == 0 ? maxLat : maxLng;
+    if (min <= split) {
+      searchWithin(lo, mid, depth + 1, minLat, minLng, maxLat, maxLng, found);
+    }
+    if (max >= split) {
+      searchWithin(mid + 1, hi, depth + 1, minLat, minLng, maxLat, maxLng, found);
+    }
+  }
+}
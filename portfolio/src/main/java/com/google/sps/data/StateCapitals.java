@@ -0,0 +1,97 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable list of states with the coordinates of their capitals, in the order they were read.
+ * Coordinates are kept in primitive arrays indexed by the position of the state.
+ */
+public final class StateCapitals {
+
+  private static final Logger LOGGER = Logger.getLogger(StateCapitals.class.getName());
+
+  private final String[] names;
+  private final double[] lats;
+  private final double[] lngs;
+
+  private StateCapitals(String[] names, double[] lats, double[] lngs) {
+    this.names = names;
+    this.lats = lats;
+    this.lngs = lngs;
+  }
+
+  /**
+   * Reads "name,lat,lng" lines from a CSV file. Lines whose coordinates are not numbers are logged
+   * and skipped.
+   */
+  public static StateCapitals parse(InputStream csv) throws IOException {
+    List<String> names = new ArrayList<>();
+    List<double[]> coords = new ArrayList<>();
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8))) {
+      String data;
+      while ((data = reader.readLine()) != null) {
+        String[] dataSegments = data.split(",");
+        if (dataSegments.length < 3) {
+          LOGGER.log(Level.WARNING, "Skipping malformed line: " + data);
+          continue;
+        }
+        try {
+          double lat = Double.parseDouble(dataSegments[1]);
+          double lng = Double.parseDouble(dataSegments[2]);
+          names.add(dataSegments[0]);
+          coords.add(new double[] {lat, lng});
+        } catch (NumberFormatException e) {
+          LOGGER.log(Level.WARNING, "Input could not be cast to double: " + e.getMessage());
+        }
+      }
+    }
+
+    double[] lats = new double[coords.size()];
+    double[] lngs = new double[coords.size()];
+    for (int i = 0; i < coords.size(); i++) {
+      lats[i] = coords.get(i)[0];
+      lngs[i] = coords.get(i)[1];
+    }
+    return new StateCapitals(names.toArray(new String[0]), lats, lngs);
+  }
+
+  /** Returns the number of states. */
+  public int size() {
+    return names.length;
+  }
+
+  public String getName(int index) {
+    return names[index];
+  }
+
+  public double getLat(int index) {
+    return lats[index];
+  }
+
+  public double getLng(int index) {
+    return lngs[index];
+  }
+}
@@ -0,0 +1,337 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.Transaction;
+import com.google.appengine.api.datastore.TransactionOptions;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Optional write-behind buffer for comment and like writes. Instead of one Datastore call per
+ * request, entity puts and counter increments are held in memory and written together:
+ * entities in batch puts, and all increments of the same counter as a single increment.
+ *
+ * <p>The deterministic key of a Like entity decides whether a like is new. A like already waiting
+ * in the buffer is not buffered again. When the buffer is flushed, the likes of each comment are
+ * written in small groups, each in one transaction that drops the likes whose entity is already in
+ * Datastore, puts the others and adds them to the comment's counter. So a like is counted once even
+ * when the memcache marker that stops most duplicates was evicted, or another instance writes the
+ * same like at the same time.
+ *
+ * <p>Durability: a request whose write was buffered returns before the write reaches Datastore.
+ * Buffered writes are lost if the instance dies before the next flush, which happens at most
+ * {@code FLUSH_INTERVAL_MILLIS} later or as soon as {@code MAX_PENDING_WRITES} writes are waiting.
+ * The buffer is also flushed when the app shuts down cleanly. Writes that fail are kept and
+ * retried on the next flush.
+ *
+ * <p>The buffer is off unless the "comments.write-behind" system property is true. Timed flushes
+ * run on a background thread, which App Engine only allows with basic or manual scaling, so the
+ * app must be switched to one of those before turning the buffer on. If background threads are
+ * not available, the property is ignored and every write goes straight to Datastore, since
+ * otherwise a lone write could wait in the buffer until the instance shuts down.
+ *
+ * <p>Each instance has its own buffer. Deleting a comment discards this instance's buffered writes
+ * for it, but not those of other instances.
+ */
+public class WriteBehindQueue {
+
+  private static final int MAX_PENDING_WRITES = 200;
+  private static final long FLUSH_INTERVAL_MILLIS = 1000;
+  // Datastore accepts at most 500 entities per batch put.
+  private static final int MAX_BATCH_SIZE = 500;
+  // A cross-group transaction may touch at most 25 entity groups. Each Like entity is its own
+  // group, and the counter shard is one more.
+  private static final int MAX_LIKES_PER_TRANSACTION = 24;
+  private static final int MAX_TRANSACTION_RETRIES = 3;
+
+  private static final Logger LOGGER = Logger.getLogger(WriteBehindQueue.class.getName());
+  private static final WriteBehindQueue INSTANCE = new WriteBehindQueue();
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final Object lock = new Object();
+  // Held for the whole of a flush, so that discarded writes cannot be in a flush that is still
+  // writing them.
+  private final Object flushLock = new Object();
+  private final ScheduledExecutorService flusher;
+  private final boolean enabled;
+
+  // Later puts of the same key replace earlier ones, so repeated writes of an entity coalesce.
+  private Map<Key, Entity> pendingEntities = new LinkedHashMap<>();
+  // New Like entities, whose counter increments are only made once they are known to be new.
+  private Map<Key, Entity> pendingLikes = new LinkedHashMap<>();
+  // Increments whose Like entities are already written.
+  private Map<String, Long> pendingIncrements = new LinkedHashMap<>();
+
+  private WriteBehindQueue() {
+    ScheduledExecutorService timedFlusher = null;
+    if (Boolean.getBoolean("comments.write-behind")) {
+      try {
+        timedFlusher =
+            Executors.newSingleThreadScheduledExecutor(ThreadManager.backgroundThreadFactory());
+        timedFlusher.scheduleWithFixedDelay(
+            this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Write-behind needs background threads, which need basic or "
+            + "manual scaling. Writing straight to Datastore instead: " + e.getMessage());
+        if (timedFlusher != null) {
+          timedFlusher.shutdownNow();
+          timedFlusher = null;
+        }
+      }
+    }
+    flusher = timedFlusher;
+    enabled = timedFlusher != null;
+  }
+
+  public static WriteBehindQueue getInstance() {
+    return INSTANCE;
+  }
+
+  /** Returns whether writes should go through this buffer instead of straight to Datastore. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Buffers a put of {@code entity}. The entity must have a complete key so that it can be
+   * referred to before it is written.
+   */
+  public void put(Entity entity) {
+    if (!entity.getKey().isComplete()) {
+      throw new IllegalArgumentException("Buffered entities must have a complete key.");
+    }
+    boolean full;
+    synchronized (lock) {
+      pendingEntities.put(entity.getKey(), entity);
+      full = getNumPending() >= MAX_PENDING_WRITES;
+    }
+    afterWrite(full);
+  }
+
+  /**
+   * Buffers a new Like entity, made by {@link Likes#createLike}, together with the increment of
+   * its comment's like counter. Returns false, and buffers nothing, if the same like is already
+   * waiting.
+   */
+  public boolean addLike(Entity like) {
+    boolean full;
+    synchronized (lock) {
+      if (pendingLikes.putIfAbsent(like.getKey(), like) != null) {
+        return false;
+      }
+      full = getNumPending() >= MAX_PENDING_WRITES;
+    }
+    afterWrite(full);
+    return true;
+  }
+
+  /**
+   * Drops every buffered write that belongs to one of the comments: the comments themselves, their
+   * Like entities and increments of their like counters. Call before deleting the comments, so
+   * that a later flush cannot write them back.
+   */
+  public void discardForComments(Collection<Key> commentKeys) {
+    Set<Key> discardedComments = new HashSet<>(commentKeys);
+    Set<String> discardedCounters = new HashSet<>();
+    for (Key commentKey : commentKeys) {
+      discardedCounters.add(Likes.getCounter(commentKey).getName());
+    }
+    synchronized (flushLock) {
+      synchronized (lock) {
+        pendingEntities.values().removeIf(entity -> discardedComments.contains(entity.getKey()));
+        pendingLikes.values()
+            .removeIf(like -> discardedComments.contains(like.getProperty("commentKey")));
+        pendingIncrements.keySet().removeAll(discardedCounters);
+      }
+    }
+  }
+
+  /** Writes everything that is currently buffered. */
+  public void flush() {
+    synchronized (flushLock) {
+      flushPending();
+    }
+  }
+
+  private void flushPending() {
+    Map<Key, Entity> entities;
+    Map<Key, Entity> likes;
+    Map<String, Long> increments;
+    synchronized (lock) {
+      if (getNumPending() == 0) {
+        return;
+      }
+      entities = pendingEntities;
+      likes = pendingLikes;
+      increments = pendingIncrements;
+      pendingEntities = new LinkedHashMap<>();
+      pendingLikes = new LinkedHashMap<>();
+      pendingIncrements = new LinkedHashMap<>();
+    }
+
+    List<Entity> entityList = new ArrayList<>(entities.values());
+    int written = 0;
+    try {
+      for (; written < entityList.size(); written += MAX_BATCH_SIZE) {
+        datastore.put(
+            entityList.subList(written, Math.min(written + MAX_BATCH_SIZE, entityList.size())));
+      }
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "Could not write buffered entities, will retry: " + e.getMessage());
+      requeue(entityList.subList(written, entityList.size()), likes.values(), increments);
+      return;
+    }
+    // Cached feed pages only change when comments are added. Like totals are read per request.
+    if (!entityList.isEmpty()) {
+      CommentFeedCache.getInstance().invalidate();
+    }
+
+    Set<Key> committedLikes = new HashSet<>();
+    try {
+      writeNewLikes(likes, committedLikes);
+    } catch (RuntimeException e) {
+      LOGGER.log(Level.SEVERE, "Could not write buffered likes, will retry: " + e.getMessage());
+      // Groups that committed are written and counted, so only the others are retried.
+      likes.keySet().removeAll(committedLikes);
+      requeue(new ArrayList<>(), likes.values(), new LinkedHashMap<>());
+    }
+
+    Map<String, Long> failedIncrements = new LinkedHashMap<>();
+    for (Map.Entry<String, Long> increment : increments.entrySet()) {
+      try {
+        new ShardedCounter(increment.getKey()).increment(increment.getValue());
+      } catch (RuntimeException e) {
+        LOGGER.log(Level.SEVERE, "Could not apply buffered increment, will retry: "
+            + e.getMessage());
+        failedIncrements.put(increment.getKey(), increment.getValue());
+      }
+    }
+    requeue(new ArrayList<>(), new ArrayList<>(), failedIncrements);
+  }
+
+  // Writes and counts the likes whose entities are not in Datastore yet, in groups of likes on the
+  // same comment. The keys of the likes in each group that commits are added to committedLikes.
+  private void writeNewLikes(Map<Key, Entity> likes, Set<Key> committedLikes) {
+    Map<Key, List<Entity>> likesByComment = new LinkedHashMap<>();
+    for (Entity like : likes.values()) {
+      likesByComment.computeIfAbsent((Key) like.getProperty("commentKey"), k -> new ArrayList<>())
+          .add(like);
+    }
+    for (Map.Entry<Key, List<Entity>> commentLikes : likesByComment.entrySet()) {
+      ShardedCounter counter = Likes.getCounter(commentLikes.getKey());
+      List<Entity> allLikes = commentLikes.getValue();
+      for (int start = 0; start < allLikes.size(); start += MAX_LIKES_PER_TRANSACTION) {
+        List<Entity> group =
+            allLikes.subList(start, Math.min(start + MAX_LIKES_PER_TRANSACTION, allLikes.size()));
+        writeLikeGroup(group, counter);
+        for (Entity like : group) {
+          committedLikes.add(like.getKey());
+        }
+      }
+    }
+  }
+
+  // Puts the likes of the group that are not in Datastore yet and adds them to the counter, in one
+  // cross-group transaction. Likes that are already there were written by another instance or
+  // request, and are counted already.
+  private void writeLikeGroup(List<Entity> group, ShardedCounter counter) {
+    List<Key> likeKeys = new ArrayList<>();
+    for (Entity like : group) {
+      likeKeys.add(like.getKey());
+    }
+    for (int attempt = 1; ; attempt++) {
+      Transaction transaction =
+          datastore.beginTransaction(TransactionOptions.Builder.withXG(true));
+      try {
+        Set<Key> existing = datastore.get(transaction, likeKeys).keySet();
+        List<Entity> newLikes = new ArrayList<>();
+        for (Entity like : group) {
+          if (!existing.contains(like.getKey())) {
+            newLikes.add(like);
+          }
+        }
+        if (newLikes.isEmpty()) {
+          return;
+        }
+        datastore.put(transaction, newLikes);
+        counter.increment(transaction, newLikes.size());
+        transaction.commit();
+        counter.adjustCachedTotal(newLikes.size());
+        return;
+      } catch (ConcurrentModificationException e) {
+        if (attempt == MAX_TRANSACTION_RETRIES) {
+          throw e;
+        }
+      } finally {
+        if (transaction.isActive()) {
+          transaction.rollback();
+        }
+      }
+    }
+  }
+
+  /** Stops timed flushes and writes everything that is still buffered. */
+  public void shutdown() {
+    if (flusher != null) {
+      flusher.shutdown();
+    }
+    flush();
+  }
+
+  // Flushes on the calling thread once the buffer is full. Otherwise the next timed flush picks
+  // the write up.
+  private void afterWrite(boolean full) {
+    if (full) {
+      flush();
+    }
+  }
+
+  // Puts writes that could not be flushed back into the buffer without overwriting newer writes.
+  private void requeue(
+      List<Entity> entities, Collection<Entity> likes, Map<String, Long> increments) {
+    synchronized (lock) {
+      for (Entity entity : entities) {
+        pendingEntities.putIfAbsent(entity.getKey(), entity);
+      }
+      for (Entity like : likes) {
+        pendingLikes.putIfAbsent(like.getKey(), like);
+      }
+      for (Map.Entry<String, Long> increment : increments.entrySet()) {
+        pendingIncrements.merge(increment.getKey(), increment.getValue(), Long::sum);
+      }
+    }
+  }
+
+  private int getNumPending() {
+    return pendingEntities.size() + pendingLikes.size() + pendingIncrements.size();
+  }
+}
@@ -0,0 +1,158 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Gzips JSON responses for clients that accept it, once they grow past {@link #MIN_COMPRESSED_SIZE}
+ * bytes. App Engine sends a response only once it is complete, so the body is compressed as a
+ * whole rather than streamed.
+ *
+ * <p>App Engine's front end can gzip responses too, but only when the User-Agent as well as the
+ * Accept-Encoding header says the client supports it, and it compresses every response again.
+ * This filter is kept for the reuse: responses with an ETag that shared caches may store are
+ * compressed once per ETag, the gzipped bytes are kept in a small in-memory cache, and later
+ * responses with the same URL and ETag are served from it. Responses it has already encoded are
+ * passed through by the front end.
+ *
+ * <p>A gzipped body is a different representation from the plain one, so it gets its own ETag,
+ * the servlet's ETag with a "-gzip" suffix. The suffix is removed from If-None-Match before the
+ * servlet sees it, so servlets only ever deal with their own ETags.
+ */
+@WebFilter({
+  "/list-comments",
+  "/search-comments",
+  "/export-comments",
+  "/comment-feed-stats",
+  "/map-regions",
+  "/state-capitals",
+  "/nearest",
+  "/within"
+})
+public class CompressionFilter implements Filter {
+
+  // Below about 1 KB the gzip header and the extra CPU cost more than compression saves.
+  static final int MIN_COMPRESSED_SIZE = 1024;
+  private static final int MAX_CACHED_RESPONSES = 32;
+  static final int MAX_CACHED_RESPONSE_SIZE = 1 << 20;
+  private static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+  private final Map<String, byte[]> compressedResponses = Collections.synchronizedMap(
+      new LinkedHashMap<String, byte[]>(16, 0.75f, /* accessOrder= */ true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+          return size() > MAX_CACHED_RESPONSES;
+        }
+      });
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    // Tells caches that the body depends on Accept-Encoding, whether or not this one is gzipped.
+    httpResponse.addHeader("Vary", "Accept-Encoding");
+    if (!acceptsGzip(httpRequest.getHeader("Accept-Encoding"))) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String url = httpRequest.getQueryString() == null
+        ? httpRequest.getRequestURI()
+        : httpRequest.getRequestURI() + "?" + httpRequest.getQueryString();
+    String ifNoneMatch = httpRequest.getHeader("If-None-Match");
+    boolean gzipValidator = ifNoneMatch != null && ifNoneMatch.contains(GZIP_ETAG_SUFFIX + "\"");
+    GzipResponseWrapper wrappedResponse =
+        new GzipResponseWrapper(httpResponse, url, compressedResponses, gzipValidator);
+    chain.doFilter(
+        gzipValidator ? new PlainValidatorRequest(httpRequest) : request, wrappedResponse);
+    wrappedResponse.finish();
+  }
+
+  @Override
+  public void destroy() {}
+
+  /** Returns the ETag of the gzipped form of the response with the given ETag. */
+  static String toGzipEtag(String etag) {
+    // The suffix goes inside the quotes, which also keeps a weak "W/" prefix in place.
+    return etag.endsWith("\"")
+        ? etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\""
+        : etag + GZIP_ETAG_SUFFIX;
+  }
+
+  /** Request whose If-None-Match header holds the servlet's own ETags instead of gzip ones. */
+  private static class PlainValidatorRequest extends HttpServletRequestWrapper {
+
+    PlainValidatorRequest(HttpServletRequest request) {
+      super(request);
+    }
+
+    @Override
+    public String getHeader(String name) {
+      String value = super.getHeader(name);
+      return name.equalsIgnoreCase("If-None-Match") && value != null
+          ? value.replace(GZIP_ETAG_SUFFIX + "\"", "\"")
+          : value;
+    }
+  }
+
+  /** Returns whether an Accept-Encoding header allows a gzipped response. */
+  static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parts = coding.trim().split(";");
+      String name = parts[0].trim();
+      if (!name.equalsIgnoreCase("gzip") && !name.equalsIgnoreCase("x-gzip")
+          && !name.equals("*")) {
+        continue;
+      }
+      // A quality of 0 means the client refuses the encoding.
+      boolean refused = false;
+      for (int i = 1; i < parts.length; i++) {
+        String param = parts[i].trim();
+        if (param.startsWith("q=")) {
+          try {
+            refused = Double.parseDouble(param.substring(2)) == 0;
+          } catch (NumberFormatException e) {
+            refused = true;
+          }
+        }
+      }
+      if (!refused) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
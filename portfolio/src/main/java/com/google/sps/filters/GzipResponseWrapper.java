@@ -0,0 +1,337 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response wrapper used by {@link CompressionFilter}. The body is held back until it reaches the
+ * minimum compressed size, which is when the wrapper decides whether and how to compress it. The
+ * ETag is held back as well, and sent in the form that matches the body.
+ */
+class GzipResponseWrapper extends HttpServletResponseWrapper {
+
+  private final String url;
+  private final Map<String, byte[]> compressedResponses;
+  // Whether the client validated with the ETag of a gzipped body, which a 304 answer then repeats.
+  private final boolean gzipValidator;
+  private GzipOutputStream stream;
+  private PrintWriter writer;
+  // The ETag set by the servlet, which is not sent until the encoding of the body is known.
+  private String etag;
+  private boolean etagSent;
+
+  GzipResponseWrapper(HttpServletResponse response, String url,
+      Map<String, byte[]> compressedResponses, boolean gzipValidator) {
+    super(response);
+    this.url = url;
+    this.compressedResponses = compressedResponses;
+    this.gzipValidator = gzipValidator;
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    if (name.equalsIgnoreCase("ETag") && !etagSent) {
+      etag = value;
+    } else {
+      super.setHeader(name, value);
+    }
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    if (name.equalsIgnoreCase("ETag") && !etagSent) {
+      etag = value;
+    } else {
+      super.addHeader(name, value);
+    }
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return name.equalsIgnoreCase("ETag") && !etagSent ? etag : super.getHeader(name);
+  }
+
+  @Override
+  public boolean containsHeader(String name) {
+    return name.equalsIgnoreCase("ETag") && !etagSent ? etag != null : super.containsHeader(name);
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() throws IOException {
+    if (writer != null) {
+      throw new IllegalStateException("getWriter() has already been called");
+    }
+    if (stream == null) {
+      stream = new GzipOutputStream();
+    }
+    return stream;
+  }
+
+  @Override
+  public PrintWriter getWriter() throws IOException {
+    if (writer == null) {
+      if (stream != null) {
+        throw new IllegalStateException("getOutputStream() has already been called");
+      }
+      // Fixes the charset in the Content-Type header, as the wrapped response's own writer would.
+      setCharacterEncoding(getCharacterEncoding());
+      stream = new GzipOutputStream();
+      writer = new PrintWriter(new OutputStreamWriter(stream, getCharacterEncoding()));
+    }
+    return writer;
+  }
+
+  // The length of the body is only known once it has been compressed.
+  @Override
+  public void setContentLength(int length) {}
+
+  @Override
+  public void setContentLengthLong(long length) {}
+
+  @Override
+  public void flushBuffer() throws IOException {
+    if (writer != null) {
+      writer.flush();
+    } else if (stream != null) {
+      stream.flush();
+    }
+  }
+
+  @Override
+  public void reset() {
+    if (stream != null) {
+      throw new IllegalStateException("Cannot reset a response whose body has been written");
+    }
+    super.reset();
+    etag = null;
+  }
+
+  /** Writes out whatever is left of the body. Must be called once the response is complete. */
+  void finish() throws IOException {
+    if (writer != null) {
+      writer.close();
+    } else if (stream != null) {
+      stream.close();
+    } else {
+      // A response without a body, such as a 304, keeps the ETag the client validated with.
+      sendEtag(gzipValidator && getStatus() == SC_NOT_MODIFIED);
+    }
+  }
+
+  // Sends the held back ETag, in its gzip form if the body is gzipped.
+  private void sendEtag(boolean gzipped) {
+    if (etagSent) {
+      return;
+    }
+    if (etag != null) {
+      ((HttpServletResponse) getResponse())
+          .setHeader("ETag", gzipped ? CompressionFilter.toGzipEtag(etag) : etag);
+    }
+    etagSent = true;
+  }
+
+  // Returns whether a shared cache may store the response, and so whether its compressed form
+  // can be reused for the same URL and ETag.
+  private boolean isCacheable() {
+    String cacheControl = getHeader("Cache-Control");
+    return getStatus() == SC_OK
+        && getHeader("ETag") != null
+        && (cacheControl == null
+            || !(cacheControl.contains("private") || cacheControl.contains("no-store")));
+  }
+
+  /** Output stream that buffers the start of the body and then picks how to send it. */
+  private class GzipOutputStream extends ServletOutputStream {
+
+    private ByteArrayOutputStream buffer =
+        new ByteArrayOutputStream(CompressionFilter.MIN_COMPRESSED_SIZE);
+    // Set once the body is known to be too small to compress, or is already encoded.
+    private OutputStream uncompressed;
+    private GZIPOutputStream compressed;
+    private CapturingOutputStream capture;
+    // Compressed bytes of an identical earlier response. Later writes are dropped.
+    private byte[] cached;
+    // Where the compressed body is cached, keyed by the URL and the servlet's ETag.
+    private String cacheKey;
+    private boolean closed;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      if (buffer != null) {
+        if (buffer.size() + length <= CompressionFilter.MIN_COMPRESSED_SIZE) {
+          buffer.write(bytes, offset, length);
+          return;
+        }
+        startBody();
+      }
+      if (cached != null) {
+        return;
+      }
+      if (compressed != null) {
+        compressed.write(bytes, offset, length);
+      } else {
+        uncompressed.write(bytes, offset, length);
+      }
+    }
+
+    // Chooses how to send a body that has outgrown the buffer, and sends the buffered bytes.
+    private void startBody() throws IOException {
+      byte[] start = buffer.toByteArray();
+      buffer = null;
+      OutputStream out = getResponse().getOutputStream();
+      if (getStatus() != SC_OK || getHeader("Content-Encoding") != null) {
+        sendEtag(/* gzipped= */ false);
+        uncompressed = out;
+        uncompressed.write(start);
+        return;
+      }
+
+      setHeader("Content-Encoding", "gzip");
+      // Read while the servlet's ETag is still held back.
+      boolean cacheable = isCacheable();
+      cacheKey = url + " " + getHeader("ETag");
+      sendEtag(/* gzipped= */ true);
+      if (cacheable) {
+        cached = compressedResponses.get(cacheKey);
+        if (cached != null) {
+          return;
+        }
+        capture = new CapturingOutputStream(out);
+        out = capture;
+      }
+      compressed = new GZIPOutputStream(out);
+      compressed.write(start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      // Held back bytes stay held back until the buffer fills or the stream is closed.
+      if (compressed != null) {
+        compressed.flush();
+      } else if (uncompressed != null) {
+        uncompressed.flush();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (buffer != null) {
+        // The whole body was small enough to send as is.
+        sendEtag(/* gzipped= */ false);
+        if (buffer.size() > 0) {
+          getResponse().setContentLength(buffer.size());
+          buffer.writeTo(getResponse().getOutputStream());
+        }
+      } else if (cached != null) {
+        getResponse().setContentLength(cached.length);
+        getResponse().getOutputStream().write(cached);
+      } else if (compressed != null) {
+        compressed.finish();
+        if (capture != null && capture.isCapturing()) {
+          byte[] body = capture.release();
+          compressedResponses.put(cacheKey, body);
+          getResponse().setContentLength(body.length);
+          getResponse().getOutputStream().write(body);
+        }
+      }
+      getResponse().flushBuffer();
+    }
+
+
+    @Override
+    public boolean isReady() {
+      return true;
+    }
+
+    @Override
+    public void setWriteListener(WriteListener writeListener) {
+      // The servlet API's answer for a stream that is not in non-blocking mode.
+      throw new IllegalStateException("Compressed responses do not support non-blocking writes");
+    }
+  }
+
+  /**
+   * Keeps compressed bytes in memory so they can be cached, until they outgrow the cache's size
+   * limit. From then on it sends them straight to the client.
+   */
+  private static class CapturingOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private ByteArrayOutputStream captured = new ByteArrayOutputStream();
+
+    CapturingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    boolean isCapturing() {
+      return captured != null;
+    }
+
+    /** Returns the captured bytes. Nothing has been sent to the client yet. */
+    byte[] release() {
+      byte[] bytes = captured.toByteArray();
+      captured = null;
+      return bytes;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (captured == null) {
+        out.write(bytes, offset, length);
+        return;
+      }
+      captured.write(bytes, offset, length);
+      if (captured.size() > CompressionFilter.MAX_CACHED_RESPONSE_SIZE) {
+        captured.writeTo(out);
+        captured = null;
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (captured == null) {
+        out.flush();
+      }
+    }
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Limits how fast each user can write comments and likes. Users are identified by their email
+ * when logged in, and by IP address otherwise. Requests over the limit get a 429 response with a
+ * Retry-After header. Limits are kept in memory, so each instance enforces them separately.
+ */
+@WebFilter({"/new-comment", "/add-like", "/remove-like", "/delete-comment"})
+public class RateLimitFilter implements Filter {
+
+  // Each user can make a burst of 20 writes, then one write every 3 seconds. Tracking at most
+  // 100,000 users keeps the buckets to a few tens of megabytes.
+  private static final int BURST_SIZE = 20;
+  private static final long REFILL_SECONDS = 3;
+  private static final int MAX_TRACKED_USERS = 100_000;
+
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(
+      BURST_SIZE, REFILL_SECONDS, TimeUnit.SECONDS, MAX_TRACKED_USERS);
+
+  @Override
+  public void init(FilterConfig filterConfig) {}
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    if (!httpRequest.getMethod().equals("POST")) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    String key = userService.isUserLoggedIn()
+        ? "user:" + userService.getCurrentUser().getEmail()
+        : "ip:" + httpRequest.getRemoteAddr();
+    long waitMillis = limiter.tryAcquire(key);
+    if (waitMillis > 0) {
+      httpResponse.setHeader(
+          "Retry-After", Long.toString(TimeUnit.MILLISECONDS.toSeconds(waitMillis + 999)));
+      httpResponse.sendError(429, "Too many requests.");
+      return;
+    }
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {}
+}
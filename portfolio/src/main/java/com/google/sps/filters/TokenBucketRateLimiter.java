@@ -0,0 +1,128 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.filters;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter keyed by an arbitrary string. Each key has a bucket holding up to
+ * {@code capacity} tokens that refills at a fixed rate, and every request takes one token.
+ *
+ * <p>Keys are spread over independently locked stripes so that requests for different keys rarely
+ * wait on each other. Each stripe keeps a bounded number of buckets. When a new key arrives at a
+ * full stripe, the least recently used bucket is dropped only if it has been idle long enough to
+ * refill completely, in which case dropping it loses nothing. Otherwise every bucket in the stripe
+ * is still in use, and the new key shares one overflow bucket with the other keys that did not fit,
+ * so that a flood of new keys cannot reset the limits of keys already tracked.
+ */
+public class TokenBucketRateLimiter {
+
+  private static final int NUM_STRIPES = 64;
+
+  private static final class Bucket {
+    private double tokens;
+    private long lastRefillNanos;
+
+    private Bucket(double tokens, long lastRefillNanos) {
+      this.tokens = tokens;
+      this.lastRefillNanos = lastRefillNanos;
+    }
+  }
+
+  private static final class Stripe {
+    // Least recently used first.
+    private final LinkedHashMap<String, Bucket> buckets =
+        new LinkedHashMap<>(16, 0.75f, /* accessOrder= */ true);
+    private Bucket overflow;
+  }
+
+  private final double capacity;
+  private final double tokensPerNano;
+  // Time an unused bucket takes to refill from empty to full.
+  private final long fullRefillNanos;
+  private final int maxKeysPerStripe;
+  private final Stripe[] stripes;
+
+  /**
+   * Constructs a TokenBucketRateLimiter.
+   *
+   * @param capacity number of requests a key can make in a burst
+   * @param refillPeriod time it takes to earn back one token
+   * @param unit unit of {@code refillPeriod}
+   * @param maxKeys approximate maximum number of keys tracked at once
+   */
+  public TokenBucketRateLimiter(int capacity, long refillPeriod, TimeUnit unit, int maxKeys) {
+    this.capacity = capacity;
+    this.tokensPerNano = 1.0 / unit.toNanos(refillPeriod);
+    this.fullRefillNanos = capacity * unit.toNanos(refillPeriod);
+    this.maxKeysPerStripe = Math.max(1, maxKeys / NUM_STRIPES);
+    stripes = new Stripe[NUM_STRIPES];
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      stripes[i] = new Stripe();
+    }
+  }
+
+  /**
+   * Takes a token for the key if one is available. Returns 0 if the request may go ahead, and
+   * otherwise the number of milliseconds until the key earns its next token.
+   */
+  public long tryAcquire(String key) {
+    Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % NUM_STRIPES];
+    long now = System.nanoTime();
+    synchronized (stripe) {
+      Bucket bucket = stripe.buckets.get(key);
+      if (bucket == null) {
+        bucket = newBucket(stripe, key, now);
+      } else {
+        refill(bucket, now);
+      }
+
+      if (bucket.tokens >= 1) {
+        bucket.tokens -= 1;
+        return 0;
+      }
+      double nanosUntilToken = (1 - bucket.tokens) / tokensPerNano;
+      return Math.max(1, TimeUnit.NANOSECONDS.toMillis((long) Math.ceil(nanosUntilToken)));
+    }
+  }
+
+  // Returns the bucket for a key the stripe does not track yet. Callers hold the stripe's lock.
+  private Bucket newBucket(Stripe stripe, String key, long now) {
+    if (stripe.buckets.size() >= maxKeysPerStripe) {
+      Map.Entry<String, Bucket> eldest = stripe.buckets.entrySet().iterator().next();
+      if (now - eldest.getValue().lastRefillNanos < fullRefillNanos) {
+        // The least recently used bucket may not be full yet, so neither may any other.
+        if (stripe.overflow == null) {
+          stripe.overflow = new Bucket(capacity, now);
+        } else {
+          refill(stripe.overflow, now);
+        }
+        return stripe.overflow;
+      }
+      stripe.buckets.remove(eldest.getKey());
+    }
+    Bucket bucket = new Bucket(capacity, now);
+    stripe.buckets.put(key, bucket);
+    return bucket;
+  }
+
+  private void refill(Bucket bucket, long now) {
+    bucket.tokens =
+        Math.min(capacity, bucket.tokens + (now - bucket.lastRefillNanos) * tokensPerNano);
+    bucket.lastRefillNanos = now;
+  }
+}
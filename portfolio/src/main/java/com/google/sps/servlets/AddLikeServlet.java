@@ -14,55 +14,51 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.sps.data.CommentEventBus;
+import com.google.sps.data.LikeLeaderboard;
+import com.google.sps.data.Likes;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.util.HashSet;
-import java.util.logging.Level;
-import java.util.Set;
-import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet for adding a like to a specific comment. */
+/**
+ * Servlet for adding the current user's like to a specific comment. Liking a comment that the
+ * user already likes changes nothing, so clients can safely retry.
+ */
 @WebServlet("/add-like")
 public class AddLikeServlet extends HttpServlet {
 
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private static final Logger LOGGER = Logger.getLogger(AddLikeServlet.class.getName());
-  private final Gson gson = new Gson();
+  private final UserService userService = UserServiceFactory.getUserService();
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String stringifiedKey = request.getParameter("comment-key");
-    String userEmail = request.getParameter("user-email");
+    // Likes belong to the logged-in user, so the "user-email" parameter of older clients is
+    // ignored.
+    if (!userService.isUserLoggedIn()) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    String userEmail = userService.getCurrentUser().getEmail();
+    Key commentKey = KeyFactory.stringToKey(request.getParameter("comment-key"));
 
-    Key key = KeyFactory.stringToKey(stringifiedKey);
-    Type setType = new TypeToken<Set<String>>(){}.getType();
-    try {
-      Entity retrievedComment = datastore.get(key);
-      int numLikes = (int) (long) retrievedComment.getProperty("numLikes");
-      Set<String> userLikes = gson.fromJson((String) retrievedComment.getProperty("userLikes"), setType);
-      if (userLikes == null) { 
-        userLikes = new HashSet<String>(); 
-      }
-      userLikes.add(userEmail);
-      numLikes++;
-      retrievedComment.setProperty("numLikes", numLikes);
-      retrievedComment.setProperty("userLikes", gson.toJson(userLikes));
-      datastore.put(retrievedComment);
-    } catch (EntityNotFoundException e) {
-      LOGGER.log(Level.WARNING, "Entity could not be found in datastore: " + e.getMessage());
+    if (Likes.addLike(commentKey, userEmail)) {
+      publishLikeChange(commentKey, /* delta= */ 1);
     }
     response.sendRedirect("/comments.html");
   }
+
+  /**
+   * Passes a gained ({@code delta} = 1) or lost ({@code delta} = -1) like to the leaderboard, and
+   * tells listening clients that the comment's likes changed.
+   */
+  static void publishLikeChange(Key commentKey, long delta) {
+    LikeLeaderboard.getInstance().adjust(commentKey, delta);
+    CommentEventBus.getInstance().publishLikeChange(commentKey, delta);
+  }
 }
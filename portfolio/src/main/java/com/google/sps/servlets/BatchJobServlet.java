@@ -0,0 +1,93 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.sps.data.BatchJob;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin-only servlet for a {@link BatchJob}. POST is handled by the subclass, which usually
+ * starts a job and returns its ID. GET with a "job" parameter returns the progress of a job.
+ */
+public abstract class BatchJobServlet extends HttpServlet {
+
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final Gson gson = new Gson();
+
+  /** Returns the job this servlet starts and reports on. */
+  protected abstract BatchJob getJob();
+
+  /**
+   * Handles a POST from an admin and returns the body of the JSON response.
+   *
+   * @throws IllegalArgumentException if the request parameters are invalid
+   */
+  protected abstract Map<String, Object> handlePost(HttpServletRequest request);
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!isAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    try {
+      sendJson(response, handlePost(request));
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+    }
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!isAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    try {
+      Map<String, Object> progress =
+          getJob().getProgress(KeyFactory.stringToKey(request.getParameter("job")));
+      sendJson(response, progress);
+    } catch (IllegalArgumentException | NullPointerException | EntityNotFoundException e) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown job.");
+    }
+  }
+
+  /** Returns the response body announcing a started job. */
+  protected static Map<String, Object> jobStarted(Key jobKey) {
+    return Collections.singletonMap("job", KeyFactory.keyToString(jobKey));
+  }
+
+  protected void sendJson(HttpServletResponse response, Object body) throws IOException {
+    response.setContentType("application/json;");
+    response.getWriter().println(gson.toJson(body));
+  }
+
+  private boolean isAdmin() {
+    return userService.isUserLoggedIn() && userService.isUserAdmin();
+  }
+}
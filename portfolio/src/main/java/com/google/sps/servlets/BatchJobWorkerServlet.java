@@ -0,0 +1,86 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.DatastoreNeedIndexException;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.BatchJob;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Task queue handler that runs one batch of a {@link BatchJob}. Subclasses map a worker URL to
+ * their job.
+ */
+public abstract class BatchJobWorkerServlet extends HttpServlet {
+
+  private static final Logger LOGGER = Logger.getLogger(BatchJobWorkerServlet.class.getName());
+  // Tasks that keep failing are given up on instead of being retried forever.
+  private static final int MAX_RETRIES = 5;
+
+  /** Returns the job whose batches this servlet runs. */
+  protected abstract BatchJob getJob();
+
+  /**
+   * Returns whether a batch failed in a way that fails the same on every retry. A missing index
+   * and a bad cursor are permanent by default.
+   */
+  protected boolean isPermanentFailure(RuntimeException e) {
+    return e instanceof DatastoreNeedIndexException || e instanceof IllegalArgumentException;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine removes this header from external requests, so only tasks can have it.
+    if (request.getHeader("X-AppEngine-QueueName") == null) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    Key jobKey = KeyFactory.stringToKey(request.getParameter("job"));
+    try {
+      getJob().runBatch(jobKey);
+    } catch (EntityNotFoundException e) {
+      // Returning success stops the task queue from retrying a job that no longer exists.
+      LOGGER.log(Level.WARNING, "Entity could not be found in datastore: " + e.getMessage());
+    } catch (RuntimeException e) {
+      if (!isPermanentFailure(e) && getRetryCount(request) < MAX_RETRIES) {
+        throw e;
+      }
+      fail(jobKey, e);
+    }
+  }
+
+  // Marks the job as failed. Returning success afterwards stops the task queue from retrying it.
+  private void fail(Key jobKey, RuntimeException e) {
+    LOGGER.log(Level.SEVERE, jobKey.getKind() + " failed: " + e.getMessage(), e);
+    try {
+      getJob().fail(jobKey, e.getMessage());
+    } catch (EntityNotFoundException notFound) {
+      LOGGER.log(Level.WARNING, "Entity could not be found in datastore: " + notFound.getMessage());
+    }
+  }
+
+  private static int getRetryCount(HttpServletRequest request) {
+    String retryCount = request.getHeader("X-AppEngine-TaskRetryCount");
+    return retryCount == null ? 0 : Integer.parseInt(retryCount);
+  }
+}
@@ -0,0 +1,122 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEventBus;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Long-poll servlet that sends comment events to the comments page. A request with the "stream"
+ * and "since" values of the previous response gets the events published after it. If there are
+ * none yet, the request is held open without a thread until the next event is published or the
+ * request times out, which returns no events.
+ *
+ * <p>A held request still counts against the instance's limit on concurrent requests, so each
+ * listening page takes up one of those slots for as long as it waits. App Engine starts more
+ * instances once the slots are full, rather than holding many more listeners on one instance.
+ * Events are only seen by clients of the instance that published them; see
+ * {@link CommentEventBus}.
+ */
+@WebServlet(urlPatterns = "/comment-events", asyncSupported = true)
+public class CommentEventsServlet extends HttpServlet {
+
+  // Held requests are answered before App Engine's request deadline.
+  private static final long TIMEOUT_MILLIS = 25000;
+
+  private final CommentEventBus eventBus = CommentEventBus.getInstance();
+  private final Gson gson = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Event IDs from another instance, or from before a restart, say nothing about this stream, so
+    // those clients only get new events.
+    long since = eventBus.getStreamId().equals(request.getParameter("stream"))
+        ? parseSince(request.getParameter("since")) : eventBus.getLastId();
+
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(TIMEOUT_MILLIS);
+    AtomicBoolean answered = new AtomicBoolean();
+    Consumer<List<CommentEvent>> listener = events -> answer(asyncContext, answered, events, since);
+
+    asyncContext.addListener(new AsyncListener() {
+      @Override
+      public void onTimeout(AsyncEvent event) {
+        eventBus.unsubscribe(listener);
+        answer(asyncContext, answered, Collections.emptyList(), since);
+      }
+
+      @Override
+      public void onError(AsyncEvent event) {
+        eventBus.unsubscribe(listener);
+      }
+
+      @Override
+      public void onComplete(AsyncEvent event) {}
+
+      @Override
+      public void onStartAsync(AsyncEvent event) {}
+    });
+
+    List<CommentEvent> missedEvents = eventBus.subscribe(since, listener);
+    if (!missedEvents.isEmpty()) {
+      answer(asyncContext, answered, missedEvents, since);
+    }
+  }
+
+  // Sends the events and completes the request, unless it was already answered.
+  private void answer(
+      AsyncContext asyncContext, AtomicBoolean answered, List<CommentEvent> events, long since) {
+    if (!answered.compareAndSet(false, true)) {
+      return;
+    }
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("stream", eventBus.getStreamId());
+    body.put("since", events.isEmpty() ? since : events.get(events.size() - 1).getId());
+    body.put("events", events);
+    try {
+      HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+      response.setContentType("application/json;");
+      response.getWriter().println(gson.toJson(body));
+    } catch (IOException e) {
+      // The client has gone away. It catches up on the events when it reconnects.
+    } finally {
+      asyncContext.complete();
+    }
+  }
+
+  // Parses the ID of the last event the client has seen, treating invalid values as none.
+  private long parseSince(String since) {
+    try {
+      return Long.parseLong(since);
+    } catch (NumberFormatException e) {
+      return eventBus.getLastId();
+    }
+  }
+}
@@ -14,11 +14,11 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.CommentDeleter;
 import java.io.IOException;
+import java.util.Collections;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -28,13 +28,11 @@ import javax.servlet.http.HttpServletResponse;
 @WebServlet("/delete-comment")
 public class DeleteCommentServlet extends HttpServlet {
 
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     String stringifiedKey = request.getParameter("comment-key");
     Key key = KeyFactory.stringToKey(stringifiedKey);
-    datastore.delete(key);
+    CommentDeleter.deleteComments(Collections.singletonList(key));
     response.sendRedirect("/comments.html");
   }
 }
@@ -0,0 +1,88 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreService;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.datastore.QueryResultList;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentReader;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Admin-only servlet that exports the comments, oldest first, one page at a time. The response has
+ * the same shape as a page of /list-comments. Pass its "nextCursor" as the "cursor" parameter to
+ * get the next page, until it is null.
+ *
+ * <p>App Engine sends a response only once the servlet has finished it, so the whole export cannot
+ * be one response: it would be held in memory, and would fail once it passed the response size
+ * limit or the request deadline. Each page is small enough to stay well within both.
+ */
+@WebServlet("/export-comments")
+public class ExportCommentsServlet extends HttpServlet {
+
+  private static final int DEFAULT_PAGE_SIZE = 500;
+  private static final int MAX_PAGE_SIZE = 1000;
+
+  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final Gson gson = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (!userService.isUserLoggedIn() || !userService.isUserAdmin()) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    int pageSize = RequestParameters.getPageSize(request, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(pageSize);
+    String cursor = request.getParameter("cursor");
+    QueryResultList<Entity> entities;
+    try {
+      if (cursor != null && !cursor.isEmpty()) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+      Query query = new Query("Comment").addSort("timestamp", SortDirection.ASCENDING);
+      entities = datastore.prepare(query).asQueryResultList(fetchOptions);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor.");
+      return;
+    }
+
+    String nextCursor = entities.size() < fetchOptions.getLimit()
+        ? null : entities.getCursor().toWebSafeString();
+    CommentPage<?> page = new CommentPage<>(CommentReader.toComments(entities), nextCursor);
+
+    response.setContentType("application/json;");
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    gson.toJson(page, CommentPage.class, writer);
+    writer.flush();
+  }
+
+}
@@ -14,67 +14,338 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.FetchOptions;
 import com.google.appengine.api.datastore.Key;
 import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
+import com.google.appengine.api.datastore.PropertyProjection;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.QueryResultList;
 import com.google.appengine.api.datastore.Query.SortDirection;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 import com.google.sps.data.Comment;
+import com.google.sps.data.CommentFeedCache;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentReader;
+import com.google.sps.data.CommentSummary;
+import com.google.sps.data.LikeLeaderboard;
+import com.google.sps.data.Likes;
 import java.io.IOException;
 import java.lang.Iterable;
-import java.lang.reflect.Type; 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet that lists existing comments. */
+/**
+ * Servlet that lists existing comments one page at a time. Each response includes a cursor that
+ * can be passed back as the "cursor" parameter to fetch the following page.
+ *
+ * <p>The "sort-order" parameter is one of timestamp-descending, which is the default,
+ * timestamp-ascending and numLikes-descending. Like totals are kept in counters that Datastore
+ * cannot sort by, so the most liked view comes from the leaderboard and cannot be reversed.
+ *
+ * <p>The optional "fields" parameter is a comma-separated subset of name, email, content,
+ * timestamp and likes. When it is present, only those fields are sent, as {@link CommentSummary}
+ * objects. An empty value lists only the comment keys. Timestamp sorts read the fields with a
+ * projection query, which needs a declared composite index, so they accept only the combinations
+ * in {@code PROJECTABLE_FIELDS}. The most liked view reads whole comments in leaderboard order
+ * and accepts any fields.
+ */
 @WebServlet("/list-comments")
 public class ListCommentsServlet extends HttpServlet {
 
+  private static final int DEFAULT_PAGE_SIZE = 20;
+  private static final int MAX_PAGE_SIZE = 100;
+  private static final String DEFAULT_SORT_ORDER = "timestamp-descending";
+  private static final Set<String> SORT_ORDERS = new HashSet<>(
+      Arrays.asList("timestamp-descending", "timestamp-ascending", "numLikes-descending"));
+
+  // Comment property read for each selectable field, and the type it is projected as.
+  private static final Map<String, String> FIELD_PROPERTIES = new LinkedHashMap<>();
+  private static final Map<String, Class<?>> PROPERTY_TYPES = new HashMap<>();
+
+  // Combinations of fields other than the timestamp that a timestamp-sorted projection query can
+  // read. Each needs a composite index in datastore-indexes.xml for both sort directions, which
+  // production requires, so other combinations are rejected.
+  private static final Set<Set<String>> PROJECTABLE_FIELDS = new HashSet<>(Arrays.asList(
+      Collections.<String>emptySet(),
+      Collections.singleton("name"),
+      Collections.singleton("email"),
+      Collections.singleton("likes"),
+      new TreeSet<>(Arrays.asList("email", "name")),
+      new TreeSet<>(Arrays.asList("likes", "name"))));
+
+  static {
+    FIELD_PROPERTIES.put("name", "name");
+    FIELD_PROPERTIES.put("email", "email");
+    FIELD_PROPERTIES.put("content", "content");
+    FIELD_PROPERTIES.put("timestamp", "timestamp");
+    FIELD_PROPERTIES.put("likes", "numLikes");
+    PROPERTY_TYPES.put("name", String.class);
+    PROPERTY_TYPES.put("email", String.class);
+    PROPERTY_TYPES.put("content", String.class);
+    PROPERTY_TYPES.put("timestamp", Date.class);
+    PROPERTY_TYPES.put("numLikes", Long.class);
+  }
+
   private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final CommentFeedCache feedCache = CommentFeedCache.getInstance();
+  private final LikeLeaderboard leaderboard = LikeLeaderboard.getInstance();
   private final Gson gson = new Gson();
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String[] sortOption = request.getParameter("sort-order").split("-");
+    String sortOrder = request.getParameter("sort-order");
+    if (sortOrder == null || sortOrder.isEmpty()) {
+      sortOrder = DEFAULT_SORT_ORDER;
+    }
+    if (sortOrder.equals("numLikes-ascending")) {
+      response.sendError(
+          HttpServletResponse.SC_BAD_REQUEST, "Likes can only be sorted in descending order.");
+      return;
+    }
+    if (!SORT_ORDERS.contains(sortOrder)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown sort order.");
+      return;
+    }
+    String[] sortOption = sortOrder.split("-");
     String sortByAttr = sortOption[0];
     SortDirection direction =
         sortOption[1].equals("ascending") ? SortDirection.ASCENDING : SortDirection.DESCENDING;
 
     Query query = new Query("Comment").addSort(sortByAttr, direction);
+    // Like totals live in counters rather than on the entities, so the most liked view comes from
+    // the leaderboard instead of a Datastore sort. Its cursors are leaderboard offsets.
+    boolean mostLiked = sortByAttr.equals("numLikes") && direction == SortDirection.DESCENDING;
 
-    PreparedQuery results = datastore.prepare(query);
+    int pageSize = RequestParameters.getPageSize(request, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+    FetchOptions fetchOptions = FetchOptions.Builder.withLimit(pageSize);
+    String cursor = request.getParameter("cursor");
+    int offset = 0;
+    try {
+      if (mostLiked) {
+        offset = parseOffset(cursor);
+      } else if (cursor != null && !cursor.isEmpty()) {
+        fetchOptions.startCursor(Cursor.fromWebSafeString(cursor));
+      }
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor.");
+      return;
+    }
+    int limit = fetchOptions.getLimit();
+    int start = offset;
 
-    List<Comment> commentsList = new ArrayList<>();
-    Iterable<Entity> resultsIterable = results.asIterable();
-    Type setType = new TypeToken<Set<String>>(){}.getType();
+    String fieldsParameter = request.getParameter("fields");
+    if (fieldsParameter != null) {
+      Set<String> fields;
+      try {
+        fields = parseFields(fieldsParameter);
+        if (!mostLiked) {
+          addProjections(query, fields, sortByAttr);
+        }
+      } catch (IllegalArgumentException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+        return;
+      }
+      String fieldsKey = "|fields=" + String.join(",", fields);
+      CommentPage<CommentSummary> page = mostLiked
+          ? feedCache.get(
+              "most-liked@" + leaderboard.getVersion() + "|" + limit + "|" + start + fieldsKey,
+              () -> loadMostLikedSummaryPage(start, limit, fields))
+          : feedCache.get(
+              sortByAttr + "-" + direction + "|" + limit + "|" + cursor + fieldsKey,
+              () -> loadSummaryPage(query, fetchOptions, fields));
 
-    for (Entity entity : resultsIterable) {
-      Key key = entity.getKey();
-      String email = (String) entity.getProperty("email");
-      String name = (String) entity.getProperty("name");
-      String content = (String) entity.getProperty("content");
-      int numLikes = (int) (long) entity.getProperty("numLikes");
-      Set<String> userLikes = gson.fromJson((String) entity.getProperty("userLikes"), setType);
-      Date timestamp = (Date) entity.getProperty("timestamp");
+      if (fields.contains("likes")) {
+        page = Likes.addCountedLikes(page);
+        if (userService.isUserLoggedIn()) {
+          page = Likes.markLikedComments(page, userService.getCurrentUser().getEmail());
+        }
+      }
 
-      Comment comment =
-          new Comment(email, name, content, numLikes, userLikes, timestamp, KeyFactory.keyToString(key));
-      commentsList.add(comment);
+      writeJson(response, page);
+      return;
     }
 
-    String jsonComments = gson.toJson(commentsList);
+    // The cached page is the same for every user and holds only the likes stored on the
+    // comments. Counter totals and whether the current user liked each comment are filled in per
+    // request, so likes never make cached pages stale.
+    CommentPage<Comment> page;
+    if (mostLiked) {
+      String cacheKey = "most-liked@" + leaderboard.getVersion() + "|" + limit + "|" + start;
+      page = feedCache.get(cacheKey, () -> loadMostLikedPage(start, limit));
+    } else {
+      String cacheKey = sortByAttr + "-" + direction + "|" + limit + "|" + cursor;
+      page = feedCache.get(cacheKey, () -> loadPage(query, fetchOptions));
+    }
+
+    page = Likes.addCountedLikes(page);
+    if (userService.isUserLoggedIn()) {
+      page = Likes.markLikedComments(page, userService.getCurrentUser().getEmail());
+    }
+
+    writeJson(response, page);
+  }
+
+  // Serializes the page straight into the response, without building the JSON as a string first.
+  private void writeJson(HttpServletResponse response, Object page) throws IOException {
     response.setContentType("application/json;");
-    response.getWriter().println(jsonComments);
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    gson.toJson(page, page.getClass(), writer);
+    writer.flush();
+  }
+
+  // Reads one page of comments from Datastore, with stored likes but without counter totals or
+  // per-user state.
+  private CommentPage<Comment> loadPage(Query query, FetchOptions fetchOptions) {
+    PreparedQuery preparedQuery = datastore.prepare(query);
+    QueryResultList<Entity> results = preparedQuery.asQueryResultList(fetchOptions);
+    List<Comment> commentsList = CommentReader.toCommentsWithStoredLikes(results);
+
+    // A short page means the query is exhausted, so there is nothing left to fetch.
+    String nextCursor = commentsList.size() < fetchOptions.getLimit()
+        ? null : results.getCursor().toWebSafeString();
+    return new CommentPage<>(commentsList, nextCursor);
   }
+
+  // Reads one page of the most liked comments, in leaderboard order. The cursor of the next page is
+  // its offset into the leaderboard.
+  private CommentPage<Comment> loadMostLikedPage(int offset, int limit) {
+    List<Key> commentKeys = leaderboard.getTop(offset, limit);
+    return new CommentPage<>(CommentReader.toCommentsWithStoredLikes(getExisting(commentKeys)),
+        getMostLikedNextCursor(commentKeys, offset, limit));
+  }
+
+  // Reads one page of summaries of the most liked comments, in leaderboard order, so that they are
+  // ordered by counter totals rather than by the old numLikes property.
+  private CommentPage<CommentSummary> loadMostLikedSummaryPage(
+      int offset, int limit, Set<String> fields) {
+    List<Key> commentKeys = leaderboard.getTop(offset, limit);
+    return new CommentPage<>(toSummaries(getExisting(commentKeys), fields),
+        getMostLikedNextCursor(commentKeys, offset, limit));
+  }
+
+  // Reads the comments in key order, skipping those deleted since the leaderboard was rebuilt.
+  private List<Entity> getExisting(List<Key> commentKeys) {
+    Map<Key, Entity> entities = datastore.get(commentKeys);
+    List<Entity> results = new ArrayList<>();
+    for (Key commentKey : commentKeys) {
+      if (entities.containsKey(commentKey)) {
+        results.add(entities.get(commentKey));
+      }
+    }
+    return results;
+  }
+
+  private static String getMostLikedNextCursor(List<Key> commentKeys, int offset, int limit) {
+    return commentKeys.size() < limit || offset + limit >= LikeLeaderboard.SIZE
+        ? null : String.valueOf(offset + limit);
+  }
+
+  // Reads one page of comment summaries holding only the given fields from a projection query.
+  private CommentPage<CommentSummary> loadSummaryPage(
+      Query query, FetchOptions fetchOptions, Set<String> fields) {
+    QueryResultList<Entity> results = datastore.prepare(query).asQueryResultList(fetchOptions);
+    List<CommentSummary> summaries = toSummaries(results, fields);
+
+    String nextCursor = summaries.size() < fetchOptions.getLimit()
+        ? null : results.getCursor().toWebSafeString();
+    return new CommentPage<>(summaries, nextCursor);
+  }
+
+  // Builds summaries holding only the given fields. The entities may be projections, as long as
+  // they hold the properties behind those fields. Like totals hold only the likes stored on the
+  // comments, made before the counters existed, until the counter totals are added.
+  private static List<CommentSummary> toSummaries(List<Entity> entities, Set<String> fields) {
+    boolean withLikes = fields.contains("likes");
+    List<CommentSummary> summaries = new ArrayList<>();
+    for (Entity entity : entities) {
+      Key key = entity.getKey();
+      Integer numLikes =
+          withLikes ? Integer.valueOf((int) (long) entity.getProperty("numLikes")) : null;
+      summaries.add(new CommentSummary(KeyFactory.keyToString(key),
+          fields.contains("email") ? (String) entity.getProperty("email") : null,
+          fields.contains("name") ? (String) entity.getProperty("name") : null,
+          fields.contains("content") ? (String) entity.getProperty("content") : null,
+          numLikes, withLikes ? Boolean.FALSE : null,
+          fields.contains("timestamp") ? (Date) entity.getProperty("timestamp") : null));
+    }
+    return summaries;
+  }
+
+  // Parses a most liked cursor, which is an offset into the leaderboard. Empty means the start.
+  private static int parseOffset(String cursor) {
+    if (cursor == null || cursor.isEmpty()) {
+      return 0;
+    }
+    int offset = Integer.parseInt(cursor);
+    if (offset < 0) {
+      throw new NumberFormatException("Negative offset.");
+    }
+    return offset;
+  }
+
+  // Parses the comma-separated "fields" parameter into a sorted set of field names.
+  private static Set<String> parseFields(String fieldsParameter) {
+    Set<String> fields = new TreeSet<>();
+    for (String field : fieldsParameter.split(",")) {
+      field = field.trim();
+      if (field.isEmpty()) {
+        continue;
+      }
+      if (!FIELD_PROPERTIES.containsKey(field)) {
+        throw new IllegalArgumentException("Unknown field: " + field);
+      }
+      fields.add(field);
+    }
+    return fields;
+  }
+
+  // Makes the query read only the properties behind the fields, or only keys if there are none.
+  // The sort property is always projected, as Datastore reads it from the same index anyway.
+  // Projections other than keys only are limited to timestamp sorts and PROJECTABLE_FIELDS, the
+  // combinations with a declared index.
+  private static void addProjections(Query query, Set<String> fields, String sortByAttr) {
+    if (fields.isEmpty()) {
+      query.setKeysOnly();
+      return;
+    }
+    Set<String> otherFields = new TreeSet<>(fields);
+    otherFields.remove("timestamp");
+    if (!sortByAttr.equals("timestamp") || !PROJECTABLE_FIELDS.contains(otherFields)) {
+      throw new IllegalArgumentException("Unsupported fields for this sort order. Supported: "
+          + "timestamp, optionally with one of name, email, likes, name and email, or name and "
+          + "likes, or any fields with numLikes-descending.");
+    }
+    Set<String> properties = new LinkedHashSet<>();
+    for (String field : fields) {
+      properties.add(FIELD_PROPERTIES.get(field));
+    }
+    properties.add(sortByAttr);
+    for (String property : properties) {
+      query.addProjection(new PropertyProjection(property, PROPERTY_TYPES.get(property)));
+    }
+  }
+
 }
@@ -14,40 +14,49 @@
 
 package com.google.sps.servlets;
 
+import com.google.appengine.api.users.User;
 import com.google.appengine.api.users.UserService;
 import com.google.appengine.api.users.UserServiceFactory;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.HashMap;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/login")
-/** Handles logging in and out. */
+/**
+ * Handles logging in and out. The login state sent to the client holds the user's email and
+ * their login or logout URL, and is built for each request.
+ */
 public class LoginServlet extends HttpServlet {
-  
-  private final Map<String, String> userInfo = new HashMap<>();
+
   private final Gson gson = new Gson();
   private final UserService userService = UserServiceFactory.getUserService();
-  
+
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    response.setContentType("application/json");
+    User user = userService.getCurrentUser();
+    String userEmail = user == null ? "" : user.getEmail();
 
-    if (userService.isUserLoggedIn()) {
-      String userEmail = userService.getCurrentUser().getEmail();
-      String logoutUrl = userService.createLogoutURL("/comments.html");
-      userInfo.put("userEmail", userEmail);
-      userInfo.put("redirectUrl", logoutUrl);
-      response.getWriter().println(gson.toJson(userInfo));
-    } else {
-      String loginUrl = userService.createLoginURL("/comments.html");
-      userInfo.put("userEmail", "");
-      userInfo.put("redirectUrl", loginUrl);
-      response.getWriter().println(gson.toJson(userInfo));
+    Map<String, String> userInfo = new LinkedHashMap<>();
+    userInfo.put("userEmail", userEmail);
+    userInfo.put("redirectUrl", userEmail.isEmpty()
+        ? userService.createLoginURL("/comments.html")
+        : userService.createLogoutURL("/comments.html"));
+    String json = gson.toJson(userInfo);
+
+    // Browsers may keep the response, but must check it is still current before reusing it.
+    String etag = "\"" + Integer.toHexString(json.hashCode()) + "\"";
+    response.setHeader("Cache-Control", "private, no-cache");
+    response.setHeader("ETag", etag);
+    if (etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
     }
+    response.setContentType("application/json");
+    response.getWriter().println(json);
   }
-}
\ No newline at end of file
+}
@@ -14,75 +14,41 @@
 
 package com.google.sps.servlets;
 
-import com.google.appengine.api.datastore.DatastoreService;
-import com.google.appengine.api.datastore.DatastoreServiceFactory;
-import com.google.appengine.api.datastore.Entity;
-import com.google.appengine.api.datastore.EntityNotFoundException;
-import com.google.appengine.api.datastore.PreparedQuery;
-import com.google.appengine.api.datastore.FetchOptions;
-import com.google.appengine.api.datastore.Key;
-import com.google.appengine.api.datastore.KeyFactory;
-import com.google.appengine.api.datastore.Query;
-import com.google.gson.Gson;
+import com.google.sps.data.RegionVisits;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-/** Servlet for adding and retrieving regions on a map. */
+/** Servlet for counting visits to regions on a map, and retrieving the counts. */
 @WebServlet("/map-regions")
 public class MapRegionsServlet extends HttpServlet {
 
-  private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private final Gson gson = new Gson();
-  private static final Logger LOGGER = Logger.getLogger(MapRegionsServlet.class.getName());
+  private final RegionVisits regionVisits = RegionVisits.getInstance();
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // Visits are counted by region name, so the "key" parameter of older clients is ignored.
     String region = request.getParameter("region");
-    String stringifiedKey = request.getParameter("key");
-
-    Entity regionEntity = new Entity("Region");;
-    int numVisits = 0;
-    try {
-      if (stringifiedKey != null) {
-        regionEntity = datastore.get(KeyFactory.stringToKey(stringifiedKey));
-        numVisits = (int) (long) regionEntity.getProperty("numVisits");
-      }
-    } catch (EntityNotFoundException e) {
-      LOGGER.log(Level.WARNING, "Entity could not be found in datastore: " + e.getMessage());
+    if (region == null || !RegionVisits.isKnownRegion(region)) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid region.");
+      return;
     }
-    numVisits++;
-    regionEntity.setProperty("regionName", region);
-    regionEntity.setProperty("numVisits", numVisits);
-    datastore.put(regionEntity);
+    regionVisits.recordVisit(region);
   }
 
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    Query query = new Query("Region");
-    PreparedQuery results = datastore.prepare(query);
-
-    // Maps the name of each region to a map containing the number of users who have visited
-    // and the key for that region in the database.
-    Map<String, Map<String, String>> regionsMap = new HashMap<>();
-    Iterable<Entity> resultsIterable = results.asIterable();
-
-    for(Entity entity : resultsIterable) {
-      String regionName = (String) entity.getProperty("regionName");
-      int numVisits = (int) (long) entity.getProperty("numVisits");
-      Key key = entity.getKey();
-      Map<String, String> regionsInfo = new HashMap<>();
-      regionsInfo.put("numVisits", Integer.toString(numVisits));
-      regionsInfo.put("key", KeyFactory.keyToString(key));
-      regionsMap.put(regionName, regionsInfo);
+    // Maps the name of each region to the number of users who have visited it.
+    RegionVisits.Snapshot snapshot = regionVisits.getSnapshot();
+    response.setHeader("Cache-Control", "no-cache");
+    response.setHeader("ETag", snapshot.getEtag());
+    if (snapshot.getEtag().equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
     }
     response.setContentType("application/json;");
-    response.getWriter().println(gson.toJson(regionsMap));
+    response.getWriter().println(snapshot.getJson());
   }
-}
\ No newline at end of file
+}
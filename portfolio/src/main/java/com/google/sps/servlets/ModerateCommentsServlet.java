@@ -0,0 +1,70 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.sps.data.BatchJob;
+import com.google.sps.data.CommentDeleter;
+import com.google.sps.data.CommentModeration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Admin-only servlet for deleting many comments at once.
+ *
+ * <p>POST with one or more "comment-key" parameters deletes those comments right away. POST with
+ * any of the "email", "after", "before" (milliseconds since the epoch) and "contains" filters
+ * starts a background job deleting every matching comment and returns its ID. GET with a "job"
+ * parameter returns the progress of a job.
+ */
+@WebServlet("/moderate-comments")
+public class ModerateCommentsServlet extends BatchJobServlet {
+
+  @Override
+  protected BatchJob getJob() {
+    return CommentModeration.getInstance();
+  }
+
+  @Override
+  protected Map<String, Object> handlePost(HttpServletRequest request) {
+    String[] stringifiedKeys = request.getParameterValues("comment-key");
+    if (stringifiedKeys != null) {
+      List<Key> commentKeys = new ArrayList<>();
+      for (String stringifiedKey : stringifiedKeys) {
+        commentKeys.add(KeyFactory.stringToKey(stringifiedKey));
+      }
+      CommentDeleter.deleteComments(commentKeys);
+      return Collections.singletonMap("deleted", commentKeys.size());
+    }
+
+    return jobStarted(CommentModeration.getInstance().startJob(request.getParameter("email"),
+        parseDate(request.getParameter("after")), parseDate(request.getParameter("before")),
+        request.getParameter("contains")));
+  }
+
+  // Parses milliseconds since the epoch, treating a missing parameter as no filter.
+  private static Date parseDate(String millis) {
+    if (millis == null || millis.isEmpty()) {
+      return null;
+    }
+    return new Date(Long.parseLong(millis));
+  }
+}
@@ -17,11 +17,15 @@ package com.google.sps.servlets;
 import com.google.appengine.api.datastore.DatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
-import com.google.gson.Gson;
+import com.google.sps.data.CommentEvent;
+import com.google.sps.data.CommentEventBus;
+import com.google.sps.data.CommentFeedCache;
+import com.google.sps.data.CommentSanitizer;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.WriteBehindQueue;
 import java.io.IOException;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.UUID;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -32,25 +36,34 @@ import javax.servlet.http.HttpServletResponse;
 public class NewCommentServlet extends HttpServlet {
 
   private final DatastoreService datastore = DatastoreServiceFactory.getDatastoreService();
-  private final Gson gson = new Gson();
+  private final WriteBehindQueue writeBehindQueue = WriteBehindQueue.getInstance();
 
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String content = request.getParameter("comment");
-    String name = request.getParameter("name");
-    String email = request.getParameter("email");
+    // Text is cleaned and rendered as HTML once here, so that reads need no escaping.
+    String content = CommentSanitizer.clean(request.getParameter("comment"));
+    String name = CommentSanitizer.clean(request.getParameter("name"));
+    String email = CommentSanitizer.clean(request.getParameter("email"));
     name = name.length() == 0 ? "anonymous" : name;
-    Set<String> userLikes = new HashSet<>();
     Date timestamp = new Date();
 
-    Entity commentEntity = new Entity("Comment");
+    // Buffered comments are named up front, since they only get an ID from Datastore once written.
+    Entity commentEntity = writeBehindQueue.isEnabled()
+        ? new Entity("Comment", UUID.randomUUID().toString()) : new Entity("Comment");
     commentEntity.setProperty("email", email);
     commentEntity.setProperty("name", name);
     commentEntity.setProperty("content", content);
     commentEntity.setProperty("numLikes", 0);
-    commentEntity.setProperty("userLikes", gson.toJson(userLikes));
     commentEntity.setProperty("timestamp", timestamp);
-    datastore.put(commentEntity);
+    CommentSanitizer.addRenderedHtml(commentEntity);
+    if (writeBehindQueue.isEnabled()) {
+      writeBehindQueue.put(commentEntity);
+    } else {
+      datastore.put(commentEntity);
+      CommentFeedCache.getInstance().invalidate();
+    }
+    CommentSearchIndex.index(commentEntity);
+    CommentEventBus.getInstance().publish(CommentEvent.CREATED, commentEntity.getKey());
 
     response.sendRedirect("/comments.html");
   }
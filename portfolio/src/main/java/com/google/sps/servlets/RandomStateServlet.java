@@ -15,55 +15,86 @@
 package com.google.sps.servlets;
 
 import com.google.gson.Gson;
-import java.io.BufferedReader;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import com.google.sps.data.StateCapitals;
 import java.io.IOException;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.lang.NumberFormatException;
-import java.util.HashMap;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.ServletContext;
-import javax.servlet.ServletException;
 
-/** Handles fetching a random state and its capital. */
-@WebServlet("/random-state")
+/**
+ * Handles fetching states and their capitals. /state-capitals returns every state, mapped to the
+ * coordinates of its capital, and /random-state returns one random state with its coordinates.
+ * The data is read once when the servlet starts, and every response is serialized up front.
+ */
+@WebServlet({"/random-state", "/state-capitals"})
 public class RandomStateServlet extends HttpServlet {
 
-  private final Map<String,Map<String, Double>> stateCapitalCoords = new HashMap<>();
-  private final Gson gson = new Gson();
-  private static final Logger LOGGER = Logger.getLogger(RandomStateServlet.class.getName());
+  private StateCapitals stateCapitals;
+  private String allStatesJson;
+  private String allStatesEtag;
+  private String[] stateJson;
 
   @Override
-  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
-    readStateCoords();
-    response.setContentType("application/json");
-    response.getWriter().println(gson.toJson(stateCapitalCoords));
+  public void init() throws ServletException {
+    stateCapitals = loadStateCapitals(getServletContext());
+
+    Gson gson = new Gson();
+    Map<String, Map<String, Double>> stateCapitalCoords = new LinkedHashMap<>();
+    stateJson = new String[stateCapitals.size()];
+    for (int i = 0; i < stateCapitals.size(); i++) {
+      Map<String, Double> coords = new LinkedHashMap<>();
+      coords.put("lat", stateCapitals.getLat(i));
+      coords.put("lng", stateCapitals.getLng(i));
+      stateCapitalCoords.put(stateCapitals.getName(i), coords);
+
+      Map<String, Object> state = new LinkedHashMap<>();
+      state.put("name", stateCapitals.getName(i));
+      state.putAll(coords);
+      stateJson[i] = gson.toJson(state);
+    }
+    allStatesJson = gson.toJson(stateCapitalCoords);
+    allStatesEtag = "\"" + Integer.toHexString(allStatesJson.hashCode()) + "\"";
+  }
+
+  /** Reads the state capitals bundled with the app. */
+  static StateCapitals loadStateCapitals(ServletContext context) throws ServletException {
+    try (InputStream csv = context.getResourceAsStream("/WEB-INF/state_capitals.csv")) {
+      if (csv == null) {
+        throw new ServletException("Missing /WEB-INF/state_capitals.csv");
+      }
+      return StateCapitals.parse(csv);
+    } catch (IOException e) {
+      throw new ServletException("Could not read state capitals", e);
+    }
   }
 
-  private void readStateCoords() throws IOException, ServletException {
-    InputStream stateCoords = getServletContext().getResourceAsStream("/WEB-INF/state_capitals.csv");
-    InputStreamReader inputReader = new InputStreamReader(stateCoords);
-    BufferedReader reader = new BufferedReader(inputReader);
-    String data;
-    while ((data = reader.readLine()) != null) {
-      String[] dataSegments = data.split(",");
-      String stateName = dataSegments[0];
-      try {
-        double lat = Double.parseDouble(dataSegments[1]);
-        double lng = Double.parseDouble(dataSegments[2]);
-        Map<String, Double> coords = new HashMap<>();
-        coords.put("lat", lat);
-        coords.put("lng", lng);
-        stateCapitalCoords.put(stateName, coords);
-      } catch (NumberFormatException e) {
-        LOGGER.log(Level.WARNING, "Input could not be cast to double: " + e.getMessage());
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    if (request.getServletPath().equals("/state-capitals")) {
+      // The data only changes with a new deployment.
+      response.setHeader("Cache-Control", "public, max-age=3600");
+      response.setHeader("ETag", allStatesEtag);
+      if (allStatesEtag.equals(request.getHeader("If-None-Match"))) {
+        response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        return;
       }
+      response.setContentType("application/json");
+      response.getWriter().println(allStatesJson);
+      return;
     }
+    if (stateJson.length == 0) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND, "No states available.");
+      return;
+    }
+    response.setContentType("application/json");
+    response.setHeader("Cache-Control", "no-store");
+    response.getWriter().println(stateJson[ThreadLocalRandom.current().nextInt(stateJson.length)]);
   }
-}
\ No newline at end of file
+}
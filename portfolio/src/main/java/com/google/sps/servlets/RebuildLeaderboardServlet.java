@@ -0,0 +1,52 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.BatchJob;
+import com.google.sps.data.LeaderboardRebuild;
+import java.io.IOException;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet for rebuilding the most liked leaderboard from every comment, to repair drift. Cron
+ * calls GET once a day to start a rebuild job. Admins can start one with POST, and GET with a
+ * "job" parameter returns the progress of a job.
+ */
+@WebServlet("/rebuild-leaderboard")
+public class RebuildLeaderboardServlet extends BatchJobServlet {
+
+  @Override
+  protected BatchJob getJob() {
+    return LeaderboardRebuild.getInstance();
+  }
+
+  @Override
+  protected Map<String, Object> handlePost(HttpServletRequest request) {
+    return jobStarted(LeaderboardRebuild.getInstance().startJob());
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    // App Engine removes this header from external requests, so only cron can have it.
+    if (request.getHeader("X-Appengine-Cron") != null) {
+      sendJson(response, handlePost(request));
+      return;
+    }
+    super.doGet(request, response);
+  }
+}
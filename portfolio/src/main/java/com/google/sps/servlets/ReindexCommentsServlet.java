@@ -0,0 +1,41 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.BatchJob;
+import com.google.sps.data.CommentReindex;
+import java.util.Map;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Admin-only servlet that adds every existing comment to the search index. New comments are
+ * indexed when they are posted, so this is only needed for comments posted before the index
+ * existed, or to repair the index. POST starts a background reindex job and returns its ID. GET
+ * with a "job" parameter returns the progress of a job.
+ */
+@WebServlet("/reindex-comments")
+public class ReindexCommentsServlet extends BatchJobServlet {
+
+  @Override
+  protected BatchJob getJob() {
+    return CommentReindex.getInstance();
+  }
+
+  @Override
+  protected Map<String, Object> handlePost(HttpServletRequest request) {
+    return jobStarted(CommentReindex.getInstance().startJob());
+  }
+}
@@ -0,0 +1,29 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.data.BatchJob;
+import com.google.sps.data.CommentReindex;
+import javax.servlet.annotation.WebServlet;
+
+/** Task queue handler that runs one batch of a search reindex job. */
+@WebServlet(CommentReindex.WORKER_URL)
+public class ReindexWorkerServlet extends BatchJobWorkerServlet {
+
+  @Override
+  protected BatchJob getJob() {
+    return CommentReindex.getInstance();
+  }
+}
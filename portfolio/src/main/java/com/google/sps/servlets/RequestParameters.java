@@ -0,0 +1,38 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import javax.servlet.http.HttpServletRequest;
+
+/** Parsing of request parameters shared by several servlets. */
+final class RequestParameters {
+
+  private RequestParameters() {
+    // Disallow instances.
+  }
+
+  /**
+   * Reads the "page-size" parameter, capped at {@code maxPageSize}. Missing or invalid values give
+   * {@code defaultPageSize}.
+   */
+  static int getPageSize(HttpServletRequest request, int defaultPageSize, int maxPageSize) {
+    try {
+      int pageSize = Integer.parseInt(request.getParameter("page-size"));
+      return pageSize > 0 ? Math.min(pageSize, maxPageSize) : defaultPageSize;
+    } catch (NumberFormatException e) {
+      return defaultPageSize;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.appengine.api.search.SearchException;
+import com.google.appengine.api.search.SearchQueryException;
+import com.google.appengine.api.users.UserService;
+import com.google.appengine.api.users.UserServiceFactory;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import com.google.sps.data.Comment;
+import com.google.sps.data.CommentPage;
+import com.google.sps.data.CommentSearchIndex;
+import com.google.sps.data.Likes;
+import java.io.IOException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet that searches the name and content of comments for the words in the "q" parameter. The
+ * response has the same shape as a page of /list-comments, with the best matches first.
+ */
+@WebServlet("/search-comments")
+public class SearchCommentsServlet extends HttpServlet {
+
+  private static final int DEFAULT_PAGE_SIZE = 20;
+  private static final int MAX_PAGE_SIZE = 100;
+
+  private final UserService userService = UserServiceFactory.getUserService();
+  private final Gson gson = new Gson();
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String text = request.getParameter("q");
+    if (text == null) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing search text.");
+      return;
+    }
+
+    CommentPage<Comment> page;
+    try {
+      int pageSize = RequestParameters.getPageSize(request, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+      page = CommentSearchIndex.search(text, pageSize, request.getParameter("cursor"));
+    } catch (IllegalArgumentException | SearchQueryException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    } catch (SearchException e) {
+      // The search service failed, not the request, so the client may retry.
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Search is unavailable.");
+      return;
+    }
+
+    if (userService.isUserLoggedIn()) {
+      page = Likes.markLikedComments(page, userService.getCurrentUser().getEmail());
+    }
+
+    // Serializes the page straight into the response, without building the JSON as a string first.
+    response.setContentType("application/json;");
+    JsonWriter writer = new JsonWriter(response.getWriter());
+    gson.toJson(page, CommentPage.class, writer);
+    writer.flush();
+  }
+
+}
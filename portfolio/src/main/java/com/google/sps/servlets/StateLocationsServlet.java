@@ -0,0 +1,124 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.sps.data.StateCapitalIndex;
+import com.google.sps.data.StateCapitals;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Spatial queries over the state capitals, answered from a k-d tree.
+ *
+ * <p>/nearest?lat=&lng=&k= returns the k capitals nearest to a point, nearest first, with their
+ * great-circle distance in kilometres. /within?bbox=minLat,minLng,maxLat,maxLng returns the
+ * capitals inside a box. Both return a JSON array of {name, lat, lng} objects.
+ */
+@WebServlet({"/nearest", "/within"})
+public class StateLocationsServlet extends HttpServlet {
+
+  private static final int DEFAULT_NUM_NEAREST = 5;
+  private static final double EARTH_RADIUS_KM = 6371.0;
+
+  private StateCapitals stateCapitals;
+  private StateCapitalIndex index;
+  private final Gson gson = new Gson();
+
+  @Override
+  public void init() throws ServletException {
+    stateCapitals = RandomStateServlet.loadStateCapitals(getServletContext());
+    index = new StateCapitalIndex(stateCapitals);
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    List<Map<String, Object>> states = new ArrayList<>();
+    try {
+      if (request.getServletPath().equals("/nearest")) {
+        double lat = parseCoordinate(request.getParameter("lat"), 90);
+        double lng = parseCoordinate(request.getParameter("lng"), 180);
+        String k = request.getParameter("k");
+        int numNearest = k == null ? DEFAULT_NUM_NEAREST : Integer.parseInt(k);
+        for (int state : index.nearest(lat, lng, numNearest)) {
+          Map<String, Object> result = toJsonObject(state);
+          result.put("distanceKm", distanceKm(lat, lng, stateCapitals.getLat(state),
+              stateCapitals.getLng(state)));
+          states.add(result);
+        }
+      } else {
+        String[] bbox = String.valueOf(request.getParameter("bbox")).split(",");
+        if (bbox.length != 4) {
+          throw new IllegalArgumentException("bbox must be minLat,minLng,maxLat,maxLng.");
+        }
+        double minLat = parseCoordinate(bbox[0], 90);
+        double minLng = parseCoordinate(bbox[1], 180);
+        double maxLat = parseCoordinate(bbox[2], 90);
+        double maxLng = parseCoordinate(bbox[3], 180);
+        if (minLat > maxLat || minLng > maxLng) {
+          throw new IllegalArgumentException("bbox minimums must not exceed its maximums.");
+        }
+        for (int state : index.within(minLat, minLng, maxLat, maxLng)) {
+          states.add(toJsonObject(state));
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      // Also covers NumberFormatException.
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+      return;
+    }
+
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(states));
+  }
+
+  private Map<String, Object> toJsonObject(int state) {
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("name", stateCapitals.getName(state));
+    result.put("lat", stateCapitals.getLat(state));
+    result.put("lng", stateCapitals.getLng(state));
+    return result;
+  }
+
+  // Parses a latitude or longitude, rejecting missing values and values beyond the limit.
+  private static double parseCoordinate(String value, double limit) {
+    if (value == null) {
+      throw new IllegalArgumentException("Missing coordinate.");
+    }
+    double coordinate = Double.parseDouble(value.trim());
+    if (!(Math.abs(coordinate) <= limit)) {
+      throw new IllegalArgumentException("Coordinate out of range: " + value);
+    }
+    return coordinate;
+  }
+
+  // Great-circle distance between two points, using the haversine formula.
+  private static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLng = Math.toRadians(lng2 - lng1);
+    double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+        * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+    return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(a));
+  }
+}
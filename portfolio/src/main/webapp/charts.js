@@ -6,29 +6,21 @@ function loadGCharts() {
   google.charts.setOnLoadCallback(getRegionsData);
 }
 
-/** Fetches number of visiters and key for regions. */
+/** Fetches number of visiters for regions. */
 function getRegionsData() {
   const regionsData = [
     ['Country', 'Number of Users Visited'],
   ];
-  const regionsKeys = new Map();
   fetch('/map-regions').then(response => response.json()).then((data) => {
-    const regions = Object.keys(data);
-    for (let region of regions) {
-      const currRegionData = [];
-      const numVisits = data[region]['numVisits'];
-      const key = data[region]['key'];
-      regionsKeys.set(region, key);
-      currRegionData.push(region);
-      currRegionData.push(Number(numVisits));
-      regionsData.push(currRegionData);
-    };
-    drawChart(regionsData, regionsKeys);
+    for (const [region, numVisits] of Object.entries(data)) {
+      regionsData.push([region, numVisits]);
+    }
+    drawChart(regionsData);
   });
 }
 
 /** Creates a chart and adds it to the page. */
-function drawChart(regionsData, regionsKeys, colors=['OldLace', 'SeaGreen']) {
+function drawChart(regionsData, colors=['OldLace', 'SeaGreen']) {
   const data = new google.visualization.arrayToDataTable(regionsData);
   const options = {colorAxis: {colors}};
   const chart = new google.visualization.GeoChart(document.getElementById('chart-container'));
@@ -36,20 +28,16 @@ function drawChart(regionsData, regionsKeys, colors=['OldLace', 'SeaGreen']) {
   google.visualization.events.addListener(chart, 'regionClick', (event) => {
     params = new URLSearchParams();
     params.append('region', event.region);
-    const key = regionsKeys.get(event.region);
-    if (key) { 
-      params.append('key', key); 
-    }
     fetch('/map-regions', {method: 'POST', body: params}).then(() => getRegionsData());
   });
   chart.draw(data, options);
-  addColorButton(regionsData, regionsKeys, /* currColor= */ colors[1]);
+  addColorButton(regionsData, /* currColor= */ colors[1]);
 }
 
 /**
  * Adds a button that on click changes the color of the geochart.
  */
-function addColorButton(regionsData, regionsKeys, currColor) {
+function addColorButton(regionsData, currColor) {
   const colorButton = document.createElement('button');
   colorButton.className = 'btn btn-primary btn-sm';
   colorButton.innerHTML = 'Click to see the map in a different color!';
@@ -59,7 +47,7 @@ function addColorButton(regionsData, regionsKeys, currColor) {
     const randInd = Math.floor(Math.random()*colorOptions.length);
     const color = colorOptions[randInd] != currColor ? 
         colorOptions[randInd] : colorOptions[(randInd + 1) % colorOptions.length];
-    drawChart(regionsData, regionsKeys, ['OldLace', color]);
+    drawChart(regionsData, ['OldLace', color]);
   });
   const buttonContainer = document.getElementById('color-button');
   buttonContainer.innerHTML = '';
@@ -92,35 +92,51 @@ function displayCommentInputField(userEmail) {
 }
 
 /**
- * Fetch comments from server and display on DOM.
+ * Cursors of the page of comments currently displayed, as passed to loadComments.
  */
-function loadComments() {
-  const maxCommentsPerPage = parseInt(document.getElementById('max-num-comments').value) || Number.MAX_VALUE;
+let currentPageCursors = [];
+
+/**
+ * Fetch one page of comments from server and display on DOM.
+ * pageCursors holds the cursor of every page visited so far, with the current page last.
+ * The first page has no cursor.
+ * When there is search text, the comments matching it are shown instead, best matches first.
+ */
+function loadComments(pageCursors=[]) {
+  const pageSize = document.getElementById('max-num-comments').value;
   const sortOrder = document.getElementById('sort-order').value;
-  let url = '/list-comments?sort-order=' + sortOrder;
+  const searchText = document.getElementById('search-text').value.trim();
+  let url = searchText ?
+      '/search-comments?q=' + encodeURIComponent(searchText) + '&page-size=' + pageSize :
+      '/list-comments?sort-order=' + sortOrder + '&page-size=' + pageSize;
+  if (pageCursors.length > 0) {
+    url += '&cursor=' + encodeURIComponent(pageCursors[pageCursors.length - 1]);
+  }
   fetch(url)
     .then(response => response.json())
-    .then((data) => {
-      showNextNComments(data, /* startInd= */ 0, maxCommentsPerPage);
+    .then((page) => {
+      showComments(page, pageCursors);
     });
 }
 
 /**
- * Display a specified amount of messages starting at a certain index.
+ * Display a page of comments with buttons to move to the previous and next pages.
  */
-function showNextNComments(allComments, startInd, maxNumDisplayed) {
+function showComments(page, pageCursors) {
+  currentPageCursors = pageCursors;
   const display = document.getElementById('comment-container');
     display.innerHTML = '';
     
-    for (let i = startInd; i < allComments.length && i < startInd + maxNumDisplayed; i++) {
-      const comment = allComments[i];
+    // Login status is fetched once for the whole page rather than once per comment.
+    const loginStatus = fetchLoginStatus();
+    for (const comment of page.comments) {
       const commentElement = createCommentElement(comment);
 
-      fetchLoginStatus().then((user) => {
+      loginStatus.then((user) => {
         if (user.userEmail) {
-          const isDisabled = comment.userLikes && comment.userLikes.includes(user.userEmail);
-          const likeButton = createLikeButton(isDisabled);
-          likeButton.addEventListener('click', () => sendLike(comment, user));
+          const likeButton = createLikeButton(/* isLiked= */ comment.likedByUser);
+          likeButton.addEventListener('click', () =>
+              sendLike(comment, /* isUnlike= */ comment.likedByUser));
           commentElement.appendChild(likeButton);
           if (user.userEmail == comment.email) {
             const deleteButton = createDeleteButton();
@@ -133,17 +149,16 @@ function showNextNComments(allComments, startInd, maxNumDisplayed) {
       display.appendChild(commentElement);
     }
 
-    const remainingLeft = startInd > 0;
+    const remainingLeft = pageCursors.length > 0;
     const leftButton = createNextButton(/* direction= */ 'l', /* isValid= */ remainingLeft);
     if (remainingLeft) {
-      leftButton.addEventListener('click', () => 
-          showNextNComments(allComments, startInd - maxNumDisplayed, maxNumDisplayed))
+      leftButton.addEventListener('click', () => loadComments(pageCursors.slice(0, -1)));
     }
-    const remainingRight = startInd + maxNumDisplayed < allComments.length;
+    const remainingRight = !!page.nextCursor;
     const rightButton = createNextButton(/* direction= */ 'r', /* isValid= */ remainingRight);
     if (remainingRight) {
       rightButton.addEventListener('click', () => 
-          showNextNComments(allComments, startInd + maxNumDisplayed, maxNumDisplayed))
+          loadComments(pageCursors.concat([page.nextCursor])));
     }
     display.appendChild(leftButton);
     display.appendChild(rightButton);
@@ -160,13 +175,12 @@ function deleteComment(comment) {
 }
 
 /**
- * Sends a post request to increment number of likes on a comment.
+ * Sends a post request to like or unlike a comment as the logged-in user.
  */
-function sendLike(comment, user) {
+function sendLike(comment, isUnlike=false) {
   const params = new URLSearchParams();
   params.append('comment-key', comment.key);
-  params.append('user-email', user.userEmail);
-  fetch('/add-like', {method: 'POST', body: params})
+  fetch(isUnlike ? '/remove-like' : '/add-like', {method: 'POST', body: params})
     .then(() => loadComments());
 }
 
@@ -175,16 +189,18 @@ function sendLike(comment, user) {
  */
 function createCommentElement(comment) {
   const commentContainer = document.createElement('div');
+  commentContainer.id = 'comment-' + comment.key;
   const extraLineBreak = document.createElement('br');
 
+  // The author and content HTML are escaped by the server when the comment is posted.
   const nameElement = document.createElement('p');
-  nameElement.innerHTML = 'Posted by: ';
-  nameElement.innerHTML += comment.name == 'anonymous' && comment.email ? 
-      comment.email : comment.name;
+  nameElement.innerHTML = 'Posted by: ' + comment.authorHtml;
   const contentElement = document.createElement('p');
-  contentElement.innerHTML = comment.content;
+  contentElement.innerHTML = comment.contentHtml;
 
   const likeElement = document.createElement('p');
+  likeElement.className = 'comment-likes';
+  likeElement.dataset.numLikes = comment.numLikes;
   likeElement.innerHTML = comment.numLikes + ' &#10084;&#65039;';
 
   const timeElement = document.createElement('p');
@@ -200,13 +216,12 @@ function createCommentElement(comment) {
 }
 
 /**
- * Create a like button for a comment.
+ * Create a like button for a comment, or an unlike button if the user already likes it.
  */
-function createLikeButton(isDisabled=false) {
+function createLikeButton(isLiked=false) {
   const likeButton = document.createElement('button');
-  likeButton.innerHTML = 'Like';
-  likeButton.className = 'btn btn-success btn-sm';
-  likeButton.disabled = isDisabled;
+  likeButton.innerHTML = isLiked ? 'Unlike' : 'Like';
+  likeButton.className = isLiked ? 'btn btn-outline-success btn-sm' : 'btn btn-success btn-sm';
   return likeButton;
 }
 
@@ -228,4 +243,51 @@ function createNextButton(direction, isValid) {
   nextButton.className = isValid ? 'btn btn-secondary' : 'btn btn-secondary disabled';
   nextButton.innerHTML = direction == 'r' ? '&raquo;' : '&laquo;';
   return nextButton;
-}
\ No newline at end of file
+}
+
+/**
+ * Wait for changes to comments from the server and apply them to the displayed comments,
+ * then wait again. stream and since identify the last change already applied.
+ */
+function listenForCommentEvents(stream='', since='') {
+  const url = '/comment-events?stream=' + encodeURIComponent(stream) +
+      '&since=' + encodeURIComponent(since);
+  fetch(url)
+    .then(response => response.json())
+    .then((result) => {
+      for (const event of result.events) {
+        applyCommentEvent(event);
+      }
+      listenForCommentEvents(result.stream, result.since);
+    })
+    .catch(() => {
+      setTimeout(() => listenForCommentEvents(stream, since), 5000);
+    });
+}
+
+/**
+ * Update the displayed comments for one change made on the server.
+ */
+function applyCommentEvent(event) {
+  if (event.type == 'created') {
+    // A new comment only shows up on the first page of the newest first view.
+    const sortOrder = document.getElementById('sort-order').value;
+    const searchText = document.getElementById('search-text').value.trim();
+    if (currentPageCursors.length == 0 && sortOrder == 'timestamp-descending' && !searchText) {
+      loadComments(currentPageCursors);
+    }
+    return;
+  }
+  const commentElement = document.getElementById('comment-' + event.commentKey);
+  if (!commentElement) {
+    return;
+  }
+  if (event.type == 'deleted') {
+    commentElement.remove();
+  } else if (event.type == 'liked') {
+    const likeElement = commentElement.querySelector('.comment-likes');
+    const numLikes = Number(likeElement.dataset.numLikes) + event.likeDelta;
+    likeElement.dataset.numLikes = numLikes;
+    likeElement.innerHTML = numLikes + ' &#10084;&#65039;';
+  }
+}
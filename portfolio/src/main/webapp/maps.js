@@ -2,7 +2,7 @@
  * Fetch states mapped to latitudes and longitudes.
  */
 function fetchStates() {
-  fetch('/random-state').then(response => response.json()).then((states) => {
+  fetch('/state-capitals').then(response => response.json()).then((states) => {
     displayNextState( /* stateCoordMap= */ states, /* stateInd= */ 0);
   });
 }
@@ -0,0 +1,213 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class StateCapitalIndexTest {
+  private static final String CAPITALS_CSV = "src/main/webapp/WEB-INF/state_capitals.csv";
+  private static final double DELTA = 1e-9;
+
+  @Test
+  public void nearestMatchesBruteForceOnCapitals() throws IOException {
+    StateCapitals capitals;
+    try (InputStream csv = new FileInputStream(CAPITALS_CSV)) {
+      capitals = StateCapitals.parse(csv);
+    }
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+    Random random = new Random(1);
+
+    for (int i = 0; i < 200; i++) {
+      double lat = 20 + random.nextDouble() * 45;
+      double lng = -160 + random.nextDouble() * 95;
+      int k = 1 + random.nextInt(10);
+      assertNearest(capitals, lat, lng, k, index.nearest(lat, lng, k));
+    }
+  }
+
+  @Test
+  public void nearestMatchesBruteForceOnRandomPoints() {
+    Random random = new Random(2);
+    StateCapitals capitals = randomCapitals(random, 300);
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    for (int i = 0; i < 200; i++) {
+      double lat = -60 + random.nextDouble() * 120;
+      double lng = -180 + random.nextDouble() * 360;
+      int k = 1 + random.nextInt(20);
+      assertNearest(capitals, lat, lng, k, index.nearest(lat, lng, k));
+    }
+  }
+
+  @Test
+  public void nearestWithMoreThanSizeReturnsEveryCapital() {
+    StateCapitals capitals = randomCapitals(new Random(3), 7);
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    int[] nearest = index.nearest(10, 20, 12);
+
+    Assert.assertEquals(7, nearest.length);
+    assertNearest(capitals, 10, 20, 7, nearest);
+  }
+
+  @Test
+  public void nearestWithNonPositiveKReturnsNothing() {
+    StateCapitalIndex index = new StateCapitalIndex(randomCapitals(new Random(4), 7));
+
+    Assert.assertEquals(0, index.nearest(10, 20, 0).length);
+    Assert.assertEquals(0, index.nearest(10, 20, -3).length);
+  }
+
+  @Test
+  public void nearestOfEmptyIndexReturnsNothing() {
+    StateCapitalIndex index = new StateCapitalIndex(capitals(""));
+
+    Assert.assertEquals(0, index.nearest(10, 20, 3).length);
+  }
+
+  @Test
+  public void nearestBreaksTiesWithoutLosingCapitals() {
+    // Four capitals at the same distance from the origin, one of them twice, and one further out.
+    StateCapitals capitals = capitals("North,1,0\nEast,0,1\nSouth,-1,0\nWest,0,-1\n"
+        + "East again,0,1\nFar,5,5\n");
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    int[] nearestTwo = index.nearest(0, 0, 2);
+    Assert.assertEquals(2, nearestTwo.length);
+    assertNearest(capitals, 0, 0, 2, nearestTwo);
+
+    int[] nearestFive = index.nearest(0, 0, 5);
+    Arrays.sort(nearestFive);
+    Assert.assertArrayEquals(new int[] {0, 1, 2, 3, 4}, nearestFive);
+
+    int[] all = index.nearest(0, 0, 6);
+    Assert.assertEquals(5, all[5]);
+  }
+
+  @Test
+  public void withinMatchesBruteForce() {
+    Random random = new Random(5);
+    StateCapitals capitals = randomCapitals(random, 300);
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    for (int i = 0; i < 200; i++) {
+      double lat1 = -60 + random.nextDouble() * 120;
+      double lat2 = -60 + random.nextDouble() * 120;
+      double lng1 = -180 + random.nextDouble() * 360;
+      double lng2 = -180 + random.nextDouble() * 360;
+      double minLat = Math.min(lat1, lat2);
+      double maxLat = Math.max(lat1, lat2);
+      double minLng = Math.min(lng1, lng2);
+      double maxLng = Math.max(lng1, lng2);
+
+      List<Integer> expected = new ArrayList<>();
+      for (int state = 0; state < capitals.size(); state++) {
+        if (capitals.getLat(state) >= minLat && capitals.getLat(state) <= maxLat
+            && capitals.getLng(state) >= minLng && capitals.getLng(state) <= maxLng) {
+          expected.add(state);
+        }
+      }
+      Assert.assertEquals(expected, sorted(index.within(minLat, minLng, maxLat, maxLng)));
+    }
+  }
+
+  @Test
+  public void withinIncludesEdgesAndCorners() {
+    // Box from (0, 0) to (10, 20). The first five capitals lie on its corners and edges, the
+    // rest just outside.
+    StateCapitals capitals = capitals("Corner,0,0\nOther corner,10,20\nLeft edge,5,0\n"
+        + "Top edge,10,7\nInside,5,5\nBelow,-0.001,5\nAbove,10.001,5\nLeft,5,-0.001\n"
+        + "Right,5,20.001\n");
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3, 4), sorted(index.within(0, 0, 10, 20)));
+  }
+
+  @Test
+  public void withinPointBoxFindsCapitalsAtThatPoint() {
+    StateCapitals capitals = capitals("One,3,4\nTwo,3,4\nThree,3,4.5\n");
+    StateCapitalIndex index = new StateCapitalIndex(capitals);
+
+    Assert.assertEquals(Arrays.asList(0, 1), sorted(index.within(3, 4, 3, 4)));
+    Assert.assertEquals(0, index.within(4, 4, 3, 4).length);
+  }
+
+  // Checks that nearest holds min(k, size) distinct capitals, nearest first, at the same
+  // distances as the k nearest found by scanning every capital.
+  private static void assertNearest(
+      StateCapitals capitals, double lat, double lng, int k, int[] nearest) {
+    List<Double> distances = new ArrayList<>();
+    for (int state = 0; state < capitals.size(); state++) {
+      distances.add(distance(capitals, state, lat, lng));
+    }
+    Collections.sort(distances);
+
+    Assert.assertEquals(Math.min(k, capitals.size()), nearest.length);
+    Assert.assertEquals(nearest.length, Arrays.stream(nearest).distinct().count());
+    for (int i = 0; i < nearest.length; i++) {
+      Assert.assertEquals(distances.get(i), distance(capitals, nearest[i], lat, lng), DELTA);
+    }
+  }
+
+  // Squared distance on the equirectangular projection centred on the point, as the index uses.
+  private static double distance(StateCapitals capitals, int state, double lat, double lng) {
+    double dLat = capitals.getLat(state) - lat;
+    double dLng = (capitals.getLng(state) - lng) * Math.cos(Math.toRadians(lat));
+    return dLat * dLat + dLng * dLng;
+  }
+
+  private static StateCapitals randomCapitals(Random random, int size) {
+    StringBuilder csv = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      // Coordinates on a coarse grid, so that some capitals share a latitude or longitude.
+      double lat = -60 + random.nextInt(241) * 0.5;
+      double lng = -180 + random.nextInt(721) * 0.5;
+      csv.append("State ").append(i).append(',').append(lat).append(',').append(lng).append('\n');
+    }
+    return capitals(csv.toString());
+  }
+
+  private static StateCapitals capitals(String csv) {
+    try {
+      return StateCapitals.parse(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static List<Integer> sorted(int[] states) {
+    List<Integer> list = new ArrayList<>();
+    for (int state : states) {
+      list.add(state);
+    }
+    Collections.sort(list);
+    return list;
+  }
+}
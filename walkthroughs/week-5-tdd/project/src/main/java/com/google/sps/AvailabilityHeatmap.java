@@ -0,0 +1,131 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts how many people in a group are free during each fixed-size bucket of the day.
+ */
+public final class AvailabilityHeatmap {
+
+  private AvailabilityHeatmap() {
+    // Disallow instances.
+  }
+
+  /**
+   * Returns, for each {@code bucketMinutes}-long bucket of the day, the number of
+   * {@code attendees} who have no event overlapping that bucket. The last bucket is shorter if the
+   * day does not divide evenly.
+   *
+   * <p>Busy buckets are accumulated in a difference array, so this runs in time linear in the
+   * number of (event, attendee) pairs plus the number of buckets.
+   */
+  public static int[] freeCounts(
+      Collection<Event> events, Collection<String> attendees, int bucketMinutes) {
+    if (bucketMinutes <= 0) {
+      throw new IllegalArgumentException("bucketMinutes must be positive.");
+    }
+    int numBuckets = (TimeRange.WHOLE_DAY.duration() + bucketMinutes - 1) / bucketMinutes;
+
+    Map<String, Integer> attendeeIds = new HashMap<>();
+    for (String attendee : attendees) {
+      attendeeIds.putIfAbsent(attendee, attendeeIds.size());
+    }
+
+    // Group the busy bucket ranges of every (event, attendee) pair by their first bucket with a
+    // counting sort, so they can be processed in start order without a comparison sort.
+    int[] rangeOffsets = new int[numBuckets + 1];
+    for (Event event : events) {
+      if (event.getWhen().duration() > 0) {
+        int numRelevant = countRelevant(event, attendeeIds);
+        if (numRelevant > 0) {
+          rangeOffsets[firstBucket(event.getWhen(), bucketMinutes, numBuckets)] += numRelevant;
+        }
+      }
+    }
+    int numRanges = 0;
+    for (int bucket = 0; bucket <= numBuckets; bucket++) {
+      int count = rangeOffsets[bucket];
+      rangeOffsets[bucket] = numRanges;
+      numRanges += count;
+    }
+
+    int[] rangeAttendees = new int[numRanges];
+    int[] rangeEnds = new int[numRanges];
+    int[] nextRange = rangeOffsets.clone();
+    for (Event event : events) {
+      if (event.getWhen().duration() <= 0) {
+        continue;
+      }
+      int first = firstBucket(event.getWhen(), bucketMinutes, numBuckets);
+      int end = endBucket(event.getWhen(), bucketMinutes, numBuckets);
+      for (String attendee : event.getAttendees()) {
+        Integer id = attendeeIds.get(attendee);
+        if (id != null) {
+          rangeAttendees[nextRange[first]] = id;
+          rangeEnds[nextRange[first]] = end;
+          nextRange[first]++;
+        }
+      }
+    }
+
+    // Mark each attendee busy over the union of their ranges. Ranges arrive in start order, so
+    // only the part past what is already covered for that attendee needs to be counted.
+    int[] coveredUntil = new int[attendeeIds.size()];
+    int[] busyDiff = new int[numBuckets + 1];
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      for (int range = rangeOffsets[bucket]; range < rangeOffsets[bucket + 1]; range++) {
+        int attendee = rangeAttendees[range];
+        int from = Math.max(bucket, coveredUntil[attendee]);
+        if (rangeEnds[range] > from) {
+          busyDiff[from]++;
+          busyDiff[rangeEnds[range]]--;
+          coveredUntil[attendee] = rangeEnds[range];
+        }
+      }
+    }
+
+    int[] freeCounts = new int[numBuckets];
+    int busy = 0;
+    for (int bucket = 0; bucket < numBuckets; bucket++) {
+      busy += busyDiff[bucket];
+      freeCounts[bucket] = attendeeIds.size() - busy;
+    }
+    return freeCounts;
+  }
+
+  private static int countRelevant(Event event, Map<String, Integer> attendeeIds) {
+    int count = 0;
+    for (String attendee : event.getAttendees()) {
+      if (attendeeIds.containsKey(attendee)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  // Returns the first bucket that {@code when} overlaps.
+  private static int firstBucket(TimeRange when, int bucketMinutes, int numBuckets) {
+    return Math.min(Math.max(when.start(), 0) / bucketMinutes, numBuckets);
+  }
+
+  // Returns the bucket just after the last bucket that {@code when} overlaps.
+  private static int endBucket(TimeRange when, int bucketMinutes, int numBuckets) {
+    return Math.min((when.end() + bucketMinutes - 1) / bucketMinutes, numBuckets);
+  }
+}
@@ -0,0 +1,118 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps a {@code FreeTimeSummary} for every attendee in a calendar so that meeting requests can be
+ * checked for feasibility without scanning events.
+ */
+public final class AvailabilityIndex {
+  private final Map<String, FreeTimeSummary> summaries = new HashMap<>();
+
+  /**
+   * Creates an index over all attendees of {@code events}.
+   */
+  public static AvailabilityIndex of(Collection<Event> events) {
+    AvailabilityIndex index = new AvailabilityIndex();
+    for (Event event : events) {
+      index.addEvent(event);
+    }
+    return index;
+  }
+
+  /**
+   * Updates the summaries of everyone attending {@code event} to include it.
+   */
+  public void addEvent(Event event) {
+    for (String attendee : event.getAttendees()) {
+      summaries.computeIfAbsent(attendee, person -> new FreeTimeSummary()).addBusy(event.getWhen());
+    }
+  }
+
+  /**
+   * Updates the summaries of everyone attending {@code event} to no longer include it.
+   */
+  public void removeEvent(Event event) {
+    for (String attendee : event.getAttendees()) {
+      FreeTimeSummary summary = summaries.get(attendee);
+      if (summary == null) {
+        throw new IllegalArgumentException(attendee + " has no events in this index.");
+      }
+      summary.removeBusy(event.getWhen());
+    }
+  }
+
+  /**
+   * Returns the summary for {@code attendee}. People without any events get a shared summary that
+   * is free all day and cannot be changed.
+   */
+  public FreeTimeSummary getSummary(String attendee) {
+    FreeTimeSummary summary = summaries.get(attendee);
+    return summary == null ? FreeTimeSummary.allDayFree() : summary;
+  }
+
+  /**
+   * Checks whether there is any time in the day when all required attendees of {@code request} are
+   * free for the whole meeting. When this returns {@code false}, {@code FindMeetingQuery} would
+   * return no options.
+   */
+  public boolean isFeasible(MeetingRequest request) {
+    long meetingDuration = request.getDuration();
+    if (meetingDuration > TimeRange.WHOLE_DAY.duration()) {
+      return false;
+    }
+
+    // Cheap rejection: nobody can meet for longer than their own longest gap.
+    for (String attendee : request.getAttendees()) {
+      FreeTimeSummary summary = summaries.get(attendee);
+      if (summary != null && summary.getLongestFreeGap() < meetingDuration) {
+        return false;
+      }
+    }
+    return FreeTimeSummary.findLongestFreeGap(combinedBusyMinutes(request.getAttendees()))
+        >= meetingDuration;
+  }
+
+  /**
+   * Returns a bitmap where bit {@code h} is set if hour {@code h} is completely free for all of
+   * {@code attendees}.
+   */
+  public int getFreeHours(Collection<String> attendees) {
+    int freeHours = FreeTimeSummary.ALL_HOURS_FREE;
+    for (String attendee : attendees) {
+      FreeTimeSummary summary = summaries.get(attendee);
+      if (summary != null) {
+        freeHours &= summary.getFreeHours();
+      }
+    }
+    return freeHours;
+  }
+
+  private BitSet combinedBusyMinutes(Collection<String> attendees) {
+    BitSet combined = new BitSet(FreeTimeSummary.MINUTES_PER_DAY);
+    for (String attendee : attendees) {
+      FreeTimeSummary summary = summaries.get(attendee);
+      if (summary != null) {
+        summary.addBusyMinutesTo(combined);
+      }
+    }
+    return combined;
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only, column-oriented storage for a large number of events. Instead of one object (with its
+ * own {@code TimeRange} and attendee set) per event, the table keeps each field in a primitive
+ * array. Titles and attendee names are stored once in dictionaries and referenced by id, and the
+ * attendee ids of all events share one array, where the attendees of row {@code i} are the entries
+ * from {@code attendeeOffsets[i]} (inclusive) to {@code attendeeOffsets[i + 1]} (exclusive).
+ *
+ * <p>Rows are sorted by start time, so they can be scanned in order without sorting again.
+ */
+public final class EventTable {
+  private final int[] starts;
+  private final int[] durations;
+  private final int[] titleIds;
+  private final int[] attendeeOffsets;
+  private final int[] attendeeIds;
+
+  private final String[] titles;
+  private final String[] attendeeNames;
+  private final Map<String, Integer> attendeeIdsByName;
+
+  private EventTable(int[] starts, int[] durations, int[] titleIds, int[] attendeeOffsets,
+      int[] attendeeIds, String[] titles, String[] attendeeNames,
+      Map<String, Integer> attendeeIdsByName) {
+    this.starts = starts;
+    this.durations = durations;
+    this.titleIds = titleIds;
+    this.attendeeOffsets = attendeeOffsets;
+    this.attendeeIds = attendeeIds;
+    this.titles = titles;
+    this.attendeeNames = attendeeNames;
+    this.attendeeIdsByName = attendeeIdsByName;
+  }
+
+  /**
+   * Creates a table holding the same data as {@code events}. Must be non-null.
+   */
+  public static EventTable of(Collection<Event> events) {
+    if (events == null) {
+      throw new IllegalArgumentException("events cannot be null. Use empty array instead.");
+    }
+
+    Event[] sortedEvents = events.toArray(new Event[0]);
+    Arrays.sort(sortedEvents, Event.ORDER_BY_START);
+
+    int numEvents = sortedEvents.length;
+    int[] starts = new int[numEvents];
+    int[] durations = new int[numEvents];
+    int[] titleIds = new int[numEvents];
+    int[] attendeeOffsets = new int[numEvents + 1];
+
+    Map<String, Integer> titleIdsByName = new HashMap<>();
+    List<String> titles = new ArrayList<>();
+    Map<String, Integer> attendeeIdsByName = new HashMap<>();
+    List<String> attendeeNames = new ArrayList<>();
+
+    int numAttendeeIds = 0;
+    for (Event event : sortedEvents) {
+      numAttendeeIds += event.getAttendees().size();
+    }
+    int[] attendeeIds = new int[numAttendeeIds];
+
+    int nextAttendee = 0;
+    for (int row = 0; row < numEvents; row++) {
+      Event event = sortedEvents[row];
+      starts[row] = event.getWhen().start();
+      durations[row] = event.getWhen().duration();
+      titleIds[row] = intern(event.getTitle(), titleIdsByName, titles);
+      attendeeOffsets[row] = nextAttendee;
+      for (String attendee : event.getAttendees()) {
+        attendeeIds[nextAttendee++] = intern(attendee, attendeeIdsByName, attendeeNames);
+      }
+    }
+    attendeeOffsets[numEvents] = nextAttendee;
+
+    return new EventTable(starts, durations, titleIds, attendeeOffsets, attendeeIds,
+        titles.toArray(new String[0]), attendeeNames.toArray(new String[0]), attendeeIdsByName);
+  }
+
+  // Returns the dictionary id for {@code value}, adding it to the dictionary if needed.
+  private static int intern(String value, Map<String, Integer> ids, List<String> values) {
+    Integer id = ids.get(value);
+    if (id == null) {
+      id = values.size();
+      ids.put(value, id);
+      values.add(value);
+    }
+    return id;
+  }
+
+  /**
+   * Returns the number of events in the table.
+   */
+  public int size() {
+    return starts.length;
+  }
+
+  /**
+   * Returns the start of the event in row {@code row}, in minutes.
+   */
+  public int getStart(int row) {
+    return starts[row];
+  }
+
+  /**
+   * Returns the end of the event in row {@code row}. This ending value is the closing exclusive
+   * bound.
+   */
+  public int getEnd(int row) {
+    return starts[row] + durations[row];
+  }
+
+  /**
+   * Returns the human-readable name of the event in row {@code row}.
+   */
+  public String getTitle(int row) {
+    return titles[titleIds[row]];
+  }
+
+  /**
+   * Returns the number of distinct attendees across all events in the table.
+   */
+  public int getNumAttendees() {
+    return attendeeNames.length;
+  }
+
+  /**
+   * Returns the id of {@code attendee} in this table, or -1 if they do not attend any event.
+   */
+  public int getAttendeeId(String attendee) {
+    Integer id = attendeeIdsByName.get(attendee);
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * Returns the ids of {@code attendees} as a lookup table indexed by attendee id. People who do
+   * not attend any event in this table are skipped.
+   */
+  public boolean[] toAttendeeMask(Collection<String> attendees) {
+    boolean[] mask = new boolean[attendeeNames.length];
+    for (String attendee : attendees) {
+      int id = getAttendeeId(attendee);
+      if (id != -1) {
+        mask[id] = true;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Checks if any attendee of the event in row {@code row} is set in {@code attendeeMask}.
+   */
+  public boolean hasAnyAttendee(int row, boolean[] attendeeMask) {
+    for (int i = attendeeOffsets[row]; i < attendeeOffsets[row + 1]; i++) {
+      if (attendeeMask[attendeeIds[i]]) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the event in row {@code row}. The {@code Event} is built on demand, so callers that
+   * only need a few fields should use the column accessors instead.
+   */
+  public Event getEvent(int row) {
+    List<String> attendees = new ArrayList<>(attendeeOffsets[row + 1] - attendeeOffsets[row]);
+    for (int i = attendeeOffsets[row]; i < attendeeOffsets[row + 1]; i++) {
+      attendees.add(attendeeNames[attendeeIds[i]]);
+    }
+    return new Event(getTitle(row), TimeRange.fromStartDuration(starts[row], durations[row]),
+        attendees);
+  }
+
+  /**
+   * Returns a read-only view of the table as a list of events, in start order, for code that works
+   * with the {@code Event} API. Events are built as they are accessed.
+   */
+  public List<Event> asEvents() {
+    return new AbstractList<Event>() {
+      @Override
+      public Event get(int row) {
+        return getEvent(row);
+      }
+
+      @Override
+      public int size() {
+        return EventTable.this.size();
+      }
+    };
+  }
+}
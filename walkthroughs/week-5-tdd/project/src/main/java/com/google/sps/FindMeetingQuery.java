@@ -22,11 +22,22 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.PriorityQueue;
 import java.util.Set;
 
 public final class FindMeetingQuery {
   public Collection<TimeRange> query(Collection<Event> events, MeetingRequest request) {
+    return query(events, request, /* explanation= */ null);
+  }
+
+  /**
+   * Same as {@code query}, but also fills in {@code explanation} with the attendees blocking each
+   * busy window, event counts and phase timings. When {@code explanation} is null this does no
+   * more work than an unexplained query.
+   */
+  public Collection<TimeRange> query(
+      Collection<Event> events, MeetingRequest request, QueryExplanation explanation) {
     List<TimeRange> freeTimes = new ArrayList<>();
     // Check for edge cases.
     if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
@@ -36,12 +47,135 @@ public final class FindMeetingQuery {
       freeTimes.add(TimeRange.WHOLE_DAY);
       return freeTimes;
     }
-    
+
+    long phaseStart = explanation == null ? 0 : System.nanoTime();
+    List<Event> orderedEvents = findRelevantEvents(events, request.getAttendees());
+    if (explanation != null) {
+      phaseStart = explanation.recordFilter(phaseStart, events.size(), orderedEvents.size());
+    }
+
+    orderedEvents.sort(Event.ORDER_BY_START);
+    if (explanation != null) {
+      phaseStart = explanation.recordSort(phaseStart);
+    }
+
+    List<TimeRange> busyTimes = findBusyIntervals(orderedEvents);
+    if (explanation != null) {
+      phaseStart = explanation.recordMerge(phaseStart);
+    }
+
+    freeTimes = findFreeIntervals(busyTimes, request.getDuration());
+    if (explanation != null) {
+      explanation.recordGapScan(phaseStart);
+      explanation.recordBlockedWindows(orderedEvents, busyTimes, request.getAttendees());
+    }
+    return freeTimes;
+  }
+
+  /**
+   * Same as {@code query}, but reads events from a columnar {@code EventTable}. The table is already
+   * sorted by start time, so this is a single pass over its rows that never builds {@code Event}
+   * objects.
+   */
+  public Collection<TimeRange> query(EventTable events, MeetingRequest request) {
+    return query(events, request, /* explanation= */ null);
+  }
+
+  /**
+   * Same as {@code query} over an {@code EventTable}, but also fills in {@code explanation}. The
+   * table needs no sort and is filtered and merged in the same pass, so that pass is reported as
+   * the filter phase and the sort and merge phases take no time. When {@code explanation} is null
+   * this does no more work than an unexplained query.
+   */
+  public Collection<TimeRange> query(
+      EventTable events, MeetingRequest request, QueryExplanation explanation) {
+    List<TimeRange> freeTimes = new ArrayList<>();
+    if (request.getDuration() > TimeRange.WHOLE_DAY.duration()) {
+      return freeTimes;
+    }
+    if (events.size() == 0 || request.getAttendees().isEmpty()) {
+      freeTimes.add(TimeRange.WHOLE_DAY);
+      return freeTimes;
+    }
+
+    long phaseStart = explanation == null ? 0 : System.nanoTime();
+    // Events are only built for the explanation, which needs their attendees.
+    List<Event> relevantEvents = explanation == null ? null : new ArrayList<>();
+    boolean[] relevantAttendees = events.toAttendeeMask(request.getAttendees());
+    List<TimeRange> busyTimes = new ArrayList<>();
+    int busyStart = -1;
+    int busyEnd = -1;
+    for (int row = 0; row < events.size(); row++) {
+      if (!events.hasAnyAttendee(row, relevantAttendees)) {
+        continue;
+      }
+      if (relevantEvents != null) {
+        relevantEvents.add(events.getEvent(row));
+      }
+      if (busyStart == -1) {
+        busyStart = events.getStart(row);
+        busyEnd = events.getEnd(row);
+      } else if (busyEnd < events.getStart(row)) {
+        busyTimes.add(TimeRange.fromStartEnd(busyStart, busyEnd, /* inclusive= */ false));
+        busyStart = events.getStart(row);
+        busyEnd = events.getEnd(row);
+      } else {
+        busyEnd = Math.max(busyEnd, events.getEnd(row));
+      }
+    }
+    if (busyStart != -1) {
+      busyTimes.add(TimeRange.fromStartEnd(busyStart, busyEnd, /* inclusive= */ false));
+    }
+    if (explanation != null) {
+      phaseStart = explanation.recordFilter(phaseStart, events.size(), relevantEvents.size());
+      phaseStart = explanation.recordSort(phaseStart);
+      phaseStart = explanation.recordMerge(phaseStart);
+    }
+
+    freeTimes = findFreeIntervals(busyTimes, request.getDuration());
+    if (explanation != null) {
+      explanation.recordGapScan(phaseStart);
+      explanation.recordBlockedWindows(relevantEvents, busyTimes, request.getAttendees());
+    }
+    return freeTimes;
+  }
+
+  /**
+   * Returns the earliest free interval that is long enough for the meeting, or an empty
+   * {@code Optional} if there is none. The result is the same as the first element of
+   * {@code query}, but events are taken from a heap in start order and the sweep stops at the
+   * first gap that fits. Every event is still added to the heap, but events after that gap are
+   * never sorted into place or checked for attendees.
+   */
+  public Optional<TimeRange> queryFirstFit(Collection<Event> events, MeetingRequest request) {
+    long meetingDuration = request.getDuration();
+    if (meetingDuration > TimeRange.WHOLE_DAY.duration()) {
+      return Optional.empty();
+    }
+    if (events.isEmpty() || request.getAttendees().isEmpty()) {
+      return Optional.of(TimeRange.WHOLE_DAY);
+    }
+
     PriorityQueue<Event> orderedEvents = new PriorityQueue<>(Event.ORDER_BY_START);
     orderedEvents.addAll(events);
-    List<TimeRange> busyTimes = findBusyIntervals(orderedEvents, request.getAttendees());
 
-    return findFreeIntervals(busyTimes, request.getDuration());
+    // End of the busy block that has been swept so far, i.e. the start of the current free gap.
+    int freeStart = TimeRange.START_OF_DAY;
+    while (!orderedEvents.isEmpty()) {
+      Event currEvent = orderedEvents.poll();
+      if (!hasRelevantAttendees(currEvent.getAttendees(), request.getAttendees())) {
+        continue;
+      }
+      TimeRange currEventTime = currEvent.getWhen();
+      if (currEventTime.start() - freeStart >= meetingDuration) {
+        return Optional.of(
+            TimeRange.fromStartEnd(freeStart, currEventTime.start(), /* inclusive= */ false));
+      }
+      freeStart = Math.max(freeStart, currEventTime.end());
+    }
+
+    TimeRange lastTime = TimeRange.fromStartEnd(freeStart, TimeRange.END_OF_DAY, /* inclusive= */ true);
+    return lastTime.duration() >= meetingDuration ? Optional.of(lastTime) : Optional.empty();
   }
 
   // Determines if the two collections of attendees have any in common.
@@ -75,28 +209,36 @@ public final class FindMeetingQuery {
     return freeTimes;
   }
 
-  // Finds busy intervals for relevant attendees from a PQ of events ordered by start time.
-  private static List<TimeRange> findBusyIntervals(
-      PriorityQueue<Event> orderedEvents, Collection<String> requestAttendees) {
+  // Finds the events that at least one of the requested attendees is attending.
+  private static List<Event> findRelevantEvents(
+      Collection<Event> events, Collection<String> requestAttendees) {
+    List<Event> relevantEvents = new ArrayList<>();
+    for (Event event : events) {
+      if (hasRelevantAttendees(event.getAttendees(), requestAttendees)) {
+        relevantEvents.add(event);
+      }
+    }
+    return relevantEvents;
+  }
+
+  // Merges a list of events ordered by start time into non-overlapping busy intervals.
+  private static List<TimeRange> findBusyIntervals(List<Event> orderedEvents) {
     List<TimeRange> busyTimes = new ArrayList<>();
     int busyTimesInd = 0;
 
-    while (!orderedEvents.isEmpty()) {
-      Event currEvent = orderedEvents.poll();
-      if (hasRelevantAttendees(currEvent.getAttendees(), requestAttendees)) {
-        if (busyTimesInd == 0) {
-          busyTimes.add(currEvent.getWhen());
+    for (Event currEvent : orderedEvents) {
+      if (busyTimesInd == 0) {
+        busyTimes.add(currEvent.getWhen());
+        busyTimesInd++;
+      } else {
+        TimeRange prevEventTime = busyTimes.get(busyTimesInd - 1);
+        TimeRange currEventTime = currEvent.getWhen();
+        if (prevEventTime.end() < currEventTime.start()) {
+          busyTimes.add(currEventTime);
           busyTimesInd++;
-        } else {
-          TimeRange prevEventTime = busyTimes.get(busyTimesInd - 1);
-          TimeRange currEventTime = currEvent.getWhen();
-          if (prevEventTime.end() < currEventTime.start()) {
-            busyTimes.add(currEventTime);
-            busyTimesInd++;
-          } else if (prevEventTime.end() < currEventTime.end()) {
-            busyTimes.set(busyTimesInd - 1, TimeRange.fromStartEnd(
-                prevEventTime.start(), currEventTime.end(), /* inclusive= */ false));
-          }
+        } else if (prevEventTime.end() < currEventTime.end()) {
+          busyTimes.set(busyTimesInd - 1, TimeRange.fromStartEnd(
+              prevEventTime.start(), currEventTime.end(), /* inclusive= */ false));
         }
       }
     }
@@ -0,0 +1,210 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.BitSet;
+
+/**
+ * Summary of one attendee's free time over a day, updated incrementally as their events are added
+ * and removed. The summary answers "could this person possibly fit a meeting" questions without
+ * looking at individual events.
+ */
+public final class FreeTimeSummary {
+  public static final int MINUTES_PER_DAY = TimeRange.WHOLE_DAY.duration();
+  public static final int HOURS_PER_DAY = MINUTES_PER_DAY / 60;
+  public static final int ALL_HOURS_FREE = (1 << HOURS_PER_DAY) - 1;
+
+  // Number of events covering each minute of the day. Events may overlap, so a minute only becomes
+  // free again once every event covering it has been removed.
+  private final int[] busyCount = new int[MINUTES_PER_DAY];
+
+  // Minutes with at least one event.
+  private final BitSet busyMinutes = new BitSet(MINUTES_PER_DAY);
+
+  // Number of free runs of each length, so that the longest gap can be kept up to date from the
+  // runs an update touches instead of rescanning the day.
+  private final int[] freeRunsByLength = new int[MINUTES_PER_DAY + 1];
+
+  private final int[] freeMinutesPerHour = new int[HOURS_PER_DAY];
+  private int totalFreeMinutes = MINUTES_PER_DAY;
+  private int longestFreeGap = MINUTES_PER_DAY;
+  private final boolean readOnly;
+
+  private static final FreeTimeSummary ALL_DAY_FREE = new FreeTimeSummary(/* readOnly= */ true);
+
+  public FreeTimeSummary() {
+    this(/* readOnly= */ false);
+  }
+
+  private FreeTimeSummary(boolean readOnly) {
+    this.readOnly = readOnly;
+    for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+      freeMinutesPerHour[hour] = 60;
+    }
+    freeRunsByLength[MINUTES_PER_DAY] = 1;
+  }
+
+  /**
+   * Returns a shared summary of someone with no events. It cannot be changed.
+   */
+  public static FreeTimeSummary allDayFree() {
+    return ALL_DAY_FREE;
+  }
+
+  /**
+   * Marks {@code when} as busy.
+   */
+  public void addBusy(TimeRange when) {
+    checkWritable();
+    int start = Math.max(when.start(), 0);
+    int end = Math.min(when.end(), MINUTES_PER_DAY);
+    if (start >= end) {
+      return;
+    }
+    int regionStart = busyMinutes.previousSetBit(start - 1) + 1;
+    int regionEnd = regionEnd(end);
+    countFreeRuns(regionStart, regionEnd, -1);
+    for (int minute = start; minute < end; minute++) {
+      if (busyCount[minute]++ == 0) {
+        busyMinutes.set(minute);
+        freeMinutesPerHour[minute / 60]--;
+        totalFreeMinutes--;
+      }
+    }
+    countFreeRuns(regionStart, regionEnd, 1);
+  }
+
+  /**
+   * Undoes a previous {@code addBusy} call for the same range.
+   */
+  public void removeBusy(TimeRange when) {
+    checkWritable();
+    int start = Math.max(when.start(), 0);
+    int end = Math.min(when.end(), MINUTES_PER_DAY);
+    if (start >= end) {
+      return;
+    }
+    for (int minute = start; minute < end; minute++) {
+      if (busyCount[minute] == 0) {
+        throw new IllegalStateException("Minute " + minute + " was not marked as busy.");
+      }
+    }
+    int regionStart = busyMinutes.previousSetBit(start - 1) + 1;
+    int regionEnd = regionEnd(end);
+    countFreeRuns(regionStart, regionEnd, -1);
+    for (int minute = start; minute < end; minute++) {
+      if (--busyCount[minute] == 0) {
+        busyMinutes.clear(minute);
+        freeMinutesPerHour[minute / 60]++;
+        totalFreeMinutes++;
+      }
+    }
+    countFreeRuns(regionStart, regionEnd, 1);
+  }
+
+  /**
+   * Returns the total number of free minutes in the day.
+   */
+  public int getTotalFreeMinutes() {
+    return totalFreeMinutes;
+  }
+
+  /**
+   * Returns the length in minutes of the longest stretch of free time in the day.
+   */
+  public int getLongestFreeGap() {
+    return longestFreeGap;
+  }
+
+  /**
+   * Returns a bitmap where bit {@code h} is set if hour {@code h} of the day is completely free.
+   */
+  public int getFreeHours() {
+    int freeHours = 0;
+    for (int hour = 0; hour < HOURS_PER_DAY; hour++) {
+      if (freeMinutesPerHour[hour] == 60) {
+        freeHours |= 1 << hour;
+      }
+    }
+    return freeHours;
+  }
+
+  /**
+   * Returns a copy of the busy minutes of the day, with bit {@code m} set if minute {@code m} is
+   * busy.
+   */
+  public BitSet getBusyMinutes() {
+    return (BitSet) busyMinutes.clone();
+  }
+
+  // Adds this attendee's busy minutes to {@code combined}, without copying.
+  void addBusyMinutesTo(BitSet combined) {
+    combined.or(busyMinutes);
+  }
+
+  private void checkWritable() {
+    if (readOnly) {
+      throw new UnsupportedOperationException("This summary cannot be changed.");
+    }
+  }
+
+  // Returns the end of the region an update of minutes before {@code end} can affect: the first
+  // busy minute at or after {@code end}, or the end of the day.
+  private int regionEnd(int end) {
+    int nextBusy = end < MINUTES_PER_DAY ? busyMinutes.nextSetBit(end) : -1;
+    return nextBusy == -1 ? MINUTES_PER_DAY : nextBusy;
+  }
+
+  // Adds {@code delta} to the count of every free run in [regionStart, regionEnd), then updates
+  // the longest gap. The minutes just outside the region are busy or outside the day, so every run
+  // in it is complete and no run outside it changes.
+  private void countFreeRuns(int regionStart, int regionEnd, int delta) {
+    int freeStart = busyMinutes.nextClearBit(regionStart);
+    while (freeStart < regionEnd) {
+      int freeEnd = busyMinutes.nextSetBit(freeStart);
+      if (freeEnd == -1 || freeEnd > regionEnd) {
+        freeEnd = regionEnd;
+      }
+      int length = freeEnd - freeStart;
+      freeRunsByLength[length] += delta;
+      if (delta > 0 && length > longestFreeGap) {
+        longestFreeGap = length;
+      }
+      freeStart = busyMinutes.nextClearBit(freeEnd);
+    }
+    // Runs are removed before an update and added back after it, so the longest gap only needs
+    // fixing once they are back.
+    if (delta > 0) {
+      while (longestFreeGap > 0 && freeRunsByLength[longestFreeGap] == 0) {
+        longestFreeGap--;
+      }
+    }
+  }
+
+  // Finds the length of the longest run of clear bits in the day.
+  static int findLongestFreeGap(BitSet busyMinutes) {
+    int longest = 0;
+    int freeStart = busyMinutes.nextClearBit(0);
+    while (freeStart < MINUTES_PER_DAY) {
+      int freeEnd = busyMinutes.nextSetBit(freeStart);
+      if (freeEnd == -1) {
+        freeEnd = MINUTES_PER_DAY;
+      }
+      longest = Math.max(longest, freeEnd - freeStart);
+      freeStart = busyMinutes.nextClearBit(freeEnd);
+    }
+    return longest;
+  }
+}
@@ -0,0 +1,166 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Describes how {@code FindMeetingQuery} answered one request: which attendees block each busy
+ * window, how many events were looked at, and how long each phase of the query took. Pass an
+ * instance to {@code FindMeetingQuery.query} to have it filled in; queries run without one do no
+ * extra work.
+ */
+public final class QueryExplanation {
+  /**
+   * A merged busy window and the requested attendees who have events during it.
+   */
+  public static final class BlockedWindow {
+    private final TimeRange when;
+    private final Set<String> attendees;
+
+    BlockedWindow(TimeRange when, Set<String> attendees) {
+      this.when = when;
+      this.attendees = attendees;
+    }
+
+    public TimeRange getWhen() {
+      return when;
+    }
+
+    public Set<String> getAttendees() {
+      return Collections.unmodifiableSet(attendees);
+    }
+  }
+
+  private final List<BlockedWindow> blockedWindows = new ArrayList<>();
+  private boolean rejectedBySummaries;
+  private int eventsScanned;
+  private int eventsMerged;
+  private long filterNanos;
+  private long sortNanos;
+  private long mergeNanos;
+  private long gapScanNanos;
+
+  /**
+   * Returns the busy windows of the requested attendees in start order, each with the attendees
+   * who are busy during it.
+   */
+  public List<BlockedWindow> getBlockedWindows() {
+    return Collections.unmodifiableList(blockedWindows);
+  }
+
+  /**
+   * Returns whether the attendees' free-time summaries showed that the meeting cannot fit. The
+   * query still runs for an explained request, so the blocked windows show why.
+   */
+  public boolean isRejectedBySummaries() {
+    return rejectedBySummaries;
+  }
+
+  /**
+   * Records that the free-time summaries ruled the meeting out before the query ran.
+   */
+  public void recordRejectedBySummaries() {
+    rejectedBySummaries = true;
+  }
+
+  /**
+   * Returns the number of events given to the query.
+   */
+  public int getEventsScanned() {
+    return eventsScanned;
+  }
+
+  /**
+   * Returns the number of events with at least one requested attendee, which were merged into
+   * busy windows.
+   */
+  public int getEventsMerged() {
+    return eventsMerged;
+  }
+
+  public long getFilterNanos() {
+    return filterNanos;
+  }
+
+  public long getSortNanos() {
+    return sortNanos;
+  }
+
+  public long getMergeNanos() {
+    return mergeNanos;
+  }
+
+  public long getGapScanNanos() {
+    return gapScanNanos;
+  }
+
+  // Each phase recorder takes the time at which the phase started and returns the current time,
+  // which is the start of the next phase.
+
+  long recordFilter(long startNanos, int scanned, int merged) {
+    long now = System.nanoTime();
+    filterNanos = now - startNanos;
+    eventsScanned = scanned;
+    eventsMerged = merged;
+    return now;
+  }
+
+  long recordSort(long startNanos) {
+    long now = System.nanoTime();
+    sortNanos = now - startNanos;
+    return now;
+  }
+
+  long recordMerge(long startNanos) {
+    long now = System.nanoTime();
+    mergeNanos = now - startNanos;
+    return now;
+  }
+
+  long recordGapScan(long startNanos) {
+    long now = System.nanoTime();
+    gapScanNanos = now - startNanos;
+    return now;
+  }
+
+  /**
+   * Records which requested attendees block each of {@code busyTimes}. Both lists must be ordered
+   * by start time, and every event must fall inside one of the busy windows.
+   */
+  void recordBlockedWindows(List<Event> relevantEvents, List<TimeRange> busyTimes,
+      Collection<String> requestAttendees) {
+    int eventInd = 0;
+    for (TimeRange busyTime : busyTimes) {
+      Set<String> blockers = new TreeSet<>();
+      // Events that start at the very end of a window were merged into it.
+      while (eventInd < relevantEvents.size()
+          && relevantEvents.get(eventInd).getWhen().start() <= busyTime.end()) {
+        for (String attendee : relevantEvents.get(eventInd).getAttendees()) {
+          if (requestAttendees.contains(attendee)) {
+            blockers.add(attendee);
+          }
+        }
+        eventInd++;
+      }
+      blockedWindows.add(new BlockedWindow(busyTime, blockers));
+    }
+  }
+}
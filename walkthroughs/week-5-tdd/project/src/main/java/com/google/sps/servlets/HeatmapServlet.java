@@ -0,0 +1,58 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.sps.AvailabilityHeatmap;
+import com.google.sps.Events;
+import com.google.gson.Gson;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+@WebServlet("/heatmap")
+public class HeatmapServlet extends HttpServlet {
+  private static final int DEFAULT_BUCKET_MINUTES = 15;
+
+  // The JSON body of a heatmap request.
+  private static final class HeatmapRequest {
+    private Collection<String> attendees;
+    private int bucketMinutes;
+  }
+
+  @Override
+  public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    Gson gson = new Gson();
+
+    // Convert the JSON to an instance of HeatmapRequest.
+    HeatmapRequest heatmapRequest = gson.fromJson(request.getReader(), HeatmapRequest.class);
+    Collection<String> attendees = heatmapRequest.attendees == null
+        ? Collections.emptyList() : heatmapRequest.attendees;
+    int bucketMinutes = heatmapRequest.bucketMinutes > 0
+        ? heatmapRequest.bucketMinutes : DEFAULT_BUCKET_MINUTES;
+
+    // Count the free attendees in each bucket of the day.
+    int[] freeCounts =
+        AvailabilityHeatmap.freeCounts(Arrays.asList(Events.events), attendees, bucketMinutes);
+
+    // Send the JSON back as the response
+    response.setContentType("application/json");
+    response.getWriter().println(gson.toJson(freeCounts));
+  }
+}
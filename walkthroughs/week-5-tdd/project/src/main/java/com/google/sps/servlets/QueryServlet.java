@@ -14,14 +14,20 @@
 
 package com.google.sps.servlets;
 
+import com.google.sps.AvailabilityIndex;
+import com.google.sps.EventTable;
 import com.google.sps.Events;
 import com.google.sps.FindMeetingQuery;
 import com.google.sps.MeetingRequest;
+import com.google.sps.QueryExplanation;
 import com.google.sps.TimeRange;
 import com.google.gson.Gson;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -29,6 +35,10 @@ import javax.servlet.http.HttpServletResponse;
 
 @WebServlet("/query")
 public class QueryServlet extends HttpServlet {
+  // The events never change, so the table and per-attendee summaries only need to be built once.
+  private static final EventTable EVENTS = EventTable.of(Arrays.asList(Events.events));
+  private static final AvailabilityIndex AVAILABILITY = AvailabilityIndex.of(EVENTS.asEvents());
+
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
     Gson gson = new Gson();
@@ -36,10 +46,31 @@ public class QueryServlet extends HttpServlet {
     // Convert the JSON to an instance of MeetingRequest.
     MeetingRequest meetingRequest = gson.fromJson(request.getReader(), MeetingRequest.class);
 
-    // Find the possible meeting times.
-    FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
-    Collection<TimeRange> answer =
-        findMeetingQuery.query(Arrays.asList(Events.events), meetingRequest);
+    // With ?explain=true, the same query also records how the options were found.
+    QueryExplanation explanation =
+        Boolean.parseBoolean(request.getParameter("explain")) ? new QueryExplanation() : null;
+
+    // Find the possible meeting times, skipping the full query if the summaries already show
+    // that the required attendees are never free together for long enough. An explained request
+    // still runs the query, since the blocked windows are what explains an empty answer.
+    Collection<TimeRange> answer = new ArrayList<>();
+    boolean feasible = AVAILABILITY.isFeasible(meetingRequest);
+    if (!feasible && explanation != null) {
+      explanation.recordRejectedBySummaries();
+    }
+    if (feasible || explanation != null) {
+      FindMeetingQuery findMeetingQuery = new FindMeetingQuery();
+      answer = findMeetingQuery.query(EVENTS, meetingRequest, explanation);
+    }
+
+    if (explanation != null) {
+      Map<String, Object> explainedAnswer = new HashMap<>();
+      explainedAnswer.put("options", answer);
+      explainedAnswer.put("explanation", explanation);
+      response.setContentType("application/json");
+      response.getWriter().println(gson.toJson(explainedAnswer));
+      return;
+    }
 
     // Convert the times to JSON
     String jsonResponse = gson.toJson(answer);
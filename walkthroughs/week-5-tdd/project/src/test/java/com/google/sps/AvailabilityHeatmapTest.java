@@ -0,0 +1,91 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class AvailabilityHeatmapTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0805AM = TimeRange.getTimeInMinutes(8, 5);
+  private static final int TIME_0810AM = TimeRange.getTimeInMinutes(8, 10);
+  private static final int TIME_0815AM = TimeRange.getTimeInMinutes(8, 15);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+
+  private static final int BUCKET_15_MINUTES = 15;
+  private static final int BUCKET_8AM = TIME_0800AM / BUCKET_15_MINUTES;
+
+  @Test
+  public void noEventsEveryoneFree() {
+    int[] actual = AvailabilityHeatmap.freeCounts(
+        Arrays.asList(), Arrays.asList(PERSON_A, PERSON_B), BUCKET_15_MINUTES);
+
+    Assert.assertEquals(96, actual.length);
+    for (int count : actual) {
+      Assert.assertEquals(2, count);
+    }
+  }
+
+  @Test
+  public void countsEachPersonOncePerBucket() {
+    // A has two short events in the same bucket and B overlaps both. C is not requested.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TIME_0800AM, TIME_0805AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0810AM, TIME_0815AM, false),
+            Arrays.asList(PERSON_A, PERSON_C)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_0805AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 4", TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A, PERSON_B)));
+
+    int[] actual = AvailabilityHeatmap.freeCounts(
+        events, Arrays.asList(PERSON_A, PERSON_B), BUCKET_15_MINUTES);
+
+    Assert.assertEquals(2, actual[BUCKET_8AM - 1]);
+    Assert.assertEquals(0, actual[BUCKET_8AM]);
+    Assert.assertEquals(1, actual[BUCKET_8AM + 1]);
+    Assert.assertEquals(0, actual[BUCKET_8AM + 2]);
+    Assert.assertEquals(0, actual[BUCKET_8AM + 3]);
+    Assert.assertEquals(2, actual[BUCKET_8AM + 4]);
+  }
+
+  @Test
+  public void matchesQueryForWholeGroup() {
+    // Buckets where everyone is free must be inside one of the query's options.
+    Collection<Event> events = Arrays.asList(Events.events);
+    Collection<String> attendees = Arrays.asList("Amelia", "Emma", "Liam");
+    int[] counts = AvailabilityHeatmap.freeCounts(events, attendees, BUCKET_15_MINUTES);
+    Collection<TimeRange> options =
+        new FindMeetingQuery().query(events, new MeetingRequest(attendees, BUCKET_15_MINUTES));
+
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      TimeRange range = TimeRange.fromStartDuration(bucket * BUCKET_15_MINUTES, BUCKET_15_MINUTES);
+      boolean inOption = options.stream().anyMatch(option -> option.contains(range));
+      Assert.assertEquals(inOption, counts[bucket] == attendees.size());
+    }
+  }
+}
@@ -0,0 +1,144 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class AvailabilityIndexTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0830AM = TimeRange.getTimeInMinutes(8, 30);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void summaryTracksOverlappingEvents() {
+    FreeTimeSummary summary = new FreeTimeSummary();
+    TimeRange first = TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false);
+    TimeRange second = TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false);
+
+    summary.addBusy(first);
+    summary.addBusy(second);
+    Assert.assertEquals(TimeRange.WHOLE_DAY.duration() - 120, summary.getTotalFreeMinutes());
+    Assert.assertEquals(TimeRange.WHOLE_DAY.duration() - TIME_1000AM, summary.getLongestFreeGap());
+    Assert.assertEquals(0, summary.getFreeHours() & (1 << 8));
+    Assert.assertEquals(0, summary.getFreeHours() & (1 << 9));
+
+    // Removing one event must keep the minutes that the other event still covers busy.
+    summary.removeBusy(second);
+    Assert.assertEquals(TimeRange.WHOLE_DAY.duration() - 60, summary.getTotalFreeMinutes());
+    Assert.assertEquals(1 << 9, summary.getFreeHours() & (1 << 9));
+  }
+
+  @Test
+  public void infeasibleWhenCombinedGapsTooShort() {
+    // Each person is free for most of the day, but never at the same time as the other.
+    //
+    // Events  : |--A--|
+    //                 |-----------B-----------|
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0830AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+    AvailabilityIndex index = AvailabilityIndex.of(events);
+
+    Assert.assertTrue(
+        index.isFeasible(new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES)));
+    Assert.assertFalse(index.isFeasible(
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES)));
+  }
+
+  @Test
+  public void feasibilityFollowsEventChanges() {
+    Event event = new Event("Event 1",
+        TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TimeRange.END_OF_DAY, true),
+        Arrays.asList(PERSON_A));
+    AvailabilityIndex index = AvailabilityIndex.of(Arrays.asList(event));
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_30_MINUTES);
+
+    Assert.assertFalse(index.isFeasible(request));
+    index.removeEvent(event);
+    Assert.assertTrue(index.isFeasible(request));
+  }
+
+  @Test
+  public void freeHoursCombineAttendees() {
+    // Events  : |--A--|         |------B------|
+    // Free    :       |---------|
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+    AvailabilityIndex index = AvailabilityIndex.of(events);
+
+    Assert.assertEquals((1 << 8) | (1 << 9), index.getFreeHours(Arrays.asList(PERSON_A, PERSON_B)));
+  }
+
+  @Test
+  public void longestGapMatchesFullScanAfterUpdates() {
+    FreeTimeSummary summary = new FreeTimeSummary();
+    List<TimeRange> added = new ArrayList<>();
+    Random random = new Random(1);
+
+    for (int i = 0; i < 500; i++) {
+      if (added.isEmpty() || random.nextBoolean()) {
+        int start = random.nextInt(TimeRange.WHOLE_DAY.duration());
+        int duration = 1 + random.nextInt(120);
+        TimeRange when = TimeRange.fromStartDuration(start, duration);
+        summary.addBusy(when);
+        added.add(when);
+      } else {
+        summary.removeBusy(added.remove(random.nextInt(added.size())));
+      }
+      Assert.assertEquals(FreeTimeSummary.findLongestFreeGap(summary.getBusyMinutes()),
+          summary.getLongestFreeGap());
+    }
+  }
+
+  @Test
+  public void unknownAttendeesAreFreeAllDay() {
+    AvailabilityIndex index = AvailabilityIndex.of(Arrays.asList());
+
+    Assert.assertEquals(TimeRange.WHOLE_DAY.duration(),
+        index.getSummary(PERSON_C).getLongestFreeGap());
+    Assert.assertTrue(index.isFeasible(
+        new MeetingRequest(Arrays.asList(PERSON_C), TimeRange.WHOLE_DAY.duration())));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void unknownAttendeeSummaryCannotBeChanged() {
+    AvailabilityIndex index = AvailabilityIndex.of(Arrays.asList());
+
+    index.getSummary(PERSON_C).addBusy(TimeRange.fromStartEnd(TIME_0800AM, TIME_0900AM, false));
+  }
+}
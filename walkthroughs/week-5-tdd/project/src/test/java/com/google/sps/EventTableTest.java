@@ -0,0 +1,87 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class EventTableTest {
+  private static final String PERSON_A = "Person A";
+  private static final String PERSON_B = "Person B";
+  private static final String PERSON_C = "Person C";
+
+  private static final int TIME_0800AM = TimeRange.getTimeInMinutes(8, 0);
+  private static final int TIME_0900AM = TimeRange.getTimeInMinutes(9, 0);
+  private static final int TIME_1000AM = TimeRange.getTimeInMinutes(10, 0);
+
+  private static final int DURATION_30_MINUTES = 30;
+  private static final int DURATION_60_MINUTES = 60;
+
+  @Test
+  public void rowsSortedByStartAndEventsRoundTrip() {
+    Event late = new Event("Late", TimeRange.fromStartDuration(TIME_1000AM, DURATION_30_MINUTES),
+        Arrays.asList(PERSON_A, PERSON_B));
+    Event early = new Event("Early", TimeRange.fromStartDuration(TIME_0800AM, DURATION_60_MINUTES),
+        Arrays.asList(PERSON_C));
+    Event empty = new Event("Empty", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+        Arrays.asList());
+
+    EventTable table = EventTable.of(Arrays.asList(late, early, empty));
+
+    Assert.assertEquals(3, table.size());
+    Assert.assertEquals(3, table.getNumAttendees());
+    Assert.assertEquals(Arrays.asList(early, empty, late), table.asEvents());
+    Assert.assertEquals(TIME_0800AM + DURATION_60_MINUTES, table.getEnd(0));
+    Assert.assertEquals("Late", table.getTitle(2));
+  }
+
+  @Test
+  public void attendeeMaskMatchesRows() {
+    EventTable table = EventTable.of(Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_A, PERSON_B)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C))));
+
+    boolean[] mask = table.toAttendeeMask(Arrays.asList(PERSON_B, "Someone else"));
+
+    Assert.assertEquals(-1, table.getAttendeeId("Someone else"));
+    Assert.assertTrue(table.hasAnyAttendee(0, mask));
+    Assert.assertFalse(table.hasAnyAttendee(1, mask));
+  }
+
+  @Test
+  public void queryMatchesEventCollection() {
+    // The sample calendar has overlapping, nested and shared events.
+    Collection<Event> events = Arrays.asList(Events.events);
+    EventTable table = EventTable.of(events);
+    FindMeetingQuery query = new FindMeetingQuery();
+
+    for (Event event : events) {
+      HashSet<String> attendees = new HashSet<>(event.getAttendees());
+      attendees.add("Oliver");
+      MeetingRequest request = new MeetingRequest(attendees, DURATION_30_MINUTES);
+
+      Assert.assertEquals(query.query(events, request), query.query(table, request));
+    }
+  }
+}
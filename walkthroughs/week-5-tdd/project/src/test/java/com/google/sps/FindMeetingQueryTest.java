@@ -18,7 +18,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -527,5 +529,152 @@ public final class FindMeetingQueryTest {
     Collection<TimeRange> expected = Arrays.asList();
     Assert.assertEquals(expected, actual);
   }
-}
 
+  @Test
+  public void firstFitTakesEarliestGap() {
+    // The first gap is too short, so the earliest option is the one after A's second event.
+    //
+    // Events  : |--A--|  |--A--|    |--B--|
+    // Day     : |-----------------------------|
+    // Options :                |--1--|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0800AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0830AM, TIME_0900AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 3", TimeRange.fromStartEnd(TIME_1000AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_B)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_60_MINUTES);
+
+    Optional<TimeRange> actual = query.queryFirstFit(events, request);
+    Optional<TimeRange> expected =
+        Optional.of(TimeRange.fromStartEnd(TIME_0900AM, TIME_1000AM, false));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void firstFitMatchesFirstQueryOption() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0830AM, DURATION_90_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_B)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+
+    Optional<TimeRange> actual = query.queryFirstFit(events, request);
+    Optional<TimeRange> expected = query.query(events, request).stream().findFirst();
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void firstFitEndOfDay() {
+    // Only the gap at the end of the day is long enough.
+    //
+    // Events  : |---------A---------|
+    // Day     : |---------------------|
+    // Options :                     |-|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_1100AM, false),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_2_HOUR);
+
+    Optional<TimeRange> actual = query.queryFirstFit(events, request);
+    Optional<TimeRange> expected =
+        Optional.of(TimeRange.fromStartEnd(TIME_1100AM, TimeRange.END_OF_DAY, true));
+
+    Assert.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void firstFitNotEnoughRoom() {
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartEnd(TimeRange.START_OF_DAY, TIME_0830AM, false),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartEnd(TIME_0900AM, TimeRange.END_OF_DAY, true),
+            Arrays.asList(PERSON_A)));
+
+    MeetingRequest request = new MeetingRequest(Arrays.asList(PERSON_A), DURATION_60_MINUTES);
+
+    Optional<TimeRange> actual = query.queryFirstFit(events, request);
+
+    Assert.assertEquals(Optional.empty(), actual);
+  }
+
+  @Test
+  public void explanationListsBlockingAttendees() {
+    // Only A and B are requested, so C's later event does not block anything.
+    //
+    // Events  :       |--A--|
+    //                     |-B,C-|   |--C--|
+    // Day     : |-------------------------------|
+    // Windows :       |----1----|
+
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B, PERSON_C)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_1100AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 4", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList("Someone else")));
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    QueryExplanation explanation = new QueryExplanation();
+
+    Collection<TimeRange> actual = query.query(events, request, explanation);
+
+    Assert.assertEquals(query.query(events, request), actual);
+    Assert.assertEquals(4, explanation.getEventsScanned());
+    Assert.assertEquals(2, explanation.getEventsMerged());
+    Assert.assertEquals(1, explanation.getBlockedWindows().size());
+
+    QueryExplanation.BlockedWindow window = explanation.getBlockedWindows().get(0);
+    Assert.assertEquals(TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false), window.getWhen());
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(PERSON_A, PERSON_B)), window.getAttendees());
+  }
+
+  @Test
+  public void tableExplanationMatchesEventExplanation() {
+    // Same schedule as explanationListsBlockingAttendees, read from an EventTable.
+    Collection<Event> events = Arrays.asList(
+        new Event("Event 1", TimeRange.fromStartDuration(TIME_0830AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_A)),
+        new Event("Event 2", TimeRange.fromStartDuration(TIME_0900AM, DURATION_60_MINUTES),
+            Arrays.asList(PERSON_B, PERSON_C)),
+        new Event("Event 3", TimeRange.fromStartDuration(TIME_1100AM, DURATION_30_MINUTES),
+            Arrays.asList(PERSON_C)),
+        new Event("Event 4", TimeRange.fromStartDuration(TIME_0800AM, DURATION_30_MINUTES),
+            Arrays.asList("Someone else")));
+    EventTable table = EventTable.of(events);
+
+    MeetingRequest request =
+        new MeetingRequest(Arrays.asList(PERSON_A, PERSON_B), DURATION_30_MINUTES);
+    QueryExplanation explanation = new QueryExplanation();
+
+    Collection<TimeRange> actual = query.query(table, request, explanation);
+
+    Assert.assertEquals(query.query(table, request), actual);
+    Assert.assertEquals(4, explanation.getEventsScanned());
+    Assert.assertEquals(2, explanation.getEventsMerged());
+    Assert.assertEquals(1, explanation.getBlockedWindows().size());
+
+    QueryExplanation.BlockedWindow window = explanation.getBlockedWindows().get(0);
+    Assert.assertEquals(TimeRange.fromStartEnd(TIME_0830AM, TIME_1000AM, false), window.getWhen());
+    Assert.assertEquals(
+        new HashSet<>(Arrays.asList(PERSON_A, PERSON_B)), window.getAttendees());
+  }
+}
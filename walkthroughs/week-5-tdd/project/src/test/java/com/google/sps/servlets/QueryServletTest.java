@@ -0,0 +1,107 @@
+// Copyright 2019 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     https://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.sps.servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.sps.Event;
+import com.google.sps.Events;
+import com.google.sps.FindMeetingQuery;
+import com.google.sps.MeetingRequest;
+import com.google.sps.TimeRange;
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** */
+@RunWith(JUnit4.class)
+public final class QueryServletTest {
+  private static final List<String> ATTENDEES = Arrays.asList("James", "Isabella");
+
+  @Test
+  public void explainedInfeasibleRequestReportsBlockers() throws Exception {
+    // One minute longer than the longest time the attendees are free together, so the summaries
+    // rule the meeting out.
+    Collection<TimeRange> freeTimes =
+        new FindMeetingQuery().query(Arrays.<Event>asList(Events.events),
+            new MeetingRequest(ATTENDEES, /* duration= */ 1));
+    long longestFree = 0;
+    for (TimeRange freeTime : freeTimes) {
+      longestFree = Math.max(longestFree, freeTime.duration());
+    }
+    String body = new Gson().toJson(new MeetingRequest(ATTENDEES, longestFree + 1));
+
+    JsonObject result = new JsonParser().parse(post(body, "true")).getAsJsonObject();
+
+    Assert.assertEquals(0, result.getAsJsonArray("options").size());
+    JsonObject explanation = result.getAsJsonObject("explanation");
+    Assert.assertTrue(explanation.get("rejectedBySummaries").getAsBoolean());
+    Assert.assertTrue(explanation.getAsJsonArray("blockedWindows").size() > 0);
+  }
+
+  @Test
+  public void unexplainedInfeasibleRequestReturnsNoOptions() throws Exception {
+    String body = new Gson().toJson(
+        new MeetingRequest(ATTENDEES, TimeRange.WHOLE_DAY.duration()));
+
+    Assert.assertEquals("[]", post(body, null).trim());
+  }
+
+  // Posts the JSON body to a QueryServlet and returns what it wrote.
+  private static String post(String body, String explain) throws Exception {
+    HttpServletRequest request = (HttpServletRequest) Proxy.newProxyInstance(
+        QueryServletTest.class.getClassLoader(), new Class<?>[] {HttpServletRequest.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getReader":
+              return new BufferedReader(new StringReader(body));
+            case "getParameter":
+              return "explain".equals(args[0]) ? explain : null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+    StringWriter output = new StringWriter();
+    PrintWriter writer = new PrintWriter(output);
+    HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(
+        QueryServletTest.class.getClassLoader(), new Class<?>[] {HttpServletResponse.class},
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getWriter":
+              return writer;
+            case "setContentType":
+              return null;
+            default:
+              throw new UnsupportedOperationException(method.getName());
+          }
+        });
+
+    new QueryServlet().doPost(request, response);
+    writer.flush();
+    return output.toString();
+  }
+}